@@ -1,5 +1,18 @@
 package com.gardenevery.vintagetag;
 
+import java.util.BitSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import javax.annotation.Nullable;
+
+import com.gardenevery.vintagetag.Tag.MutableTagContainer;
+import com.gardenevery.vintagetag.TagEntry.BlockEntry;
+import com.gardenevery.vintagetag.TagEntry.FluidEntry;
+import com.gardenevery.vintagetag.TagEntry.ItemEntry;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 
 import net.minecraft.client.Minecraft;
@@ -12,6 +25,20 @@ import net.minecraftforge.fml.relauncher.SideOnly;
 
 @SideOnly(Side.CLIENT)
 final class ClientNetworkSync {
+	// An unfinished transfer is dropped after this long without a new chunk
+	private static final long TRANSFER_TIMEOUT_MILLIS = 30_000;
+
+	// Decodes reassembled frames, builds every received snapshot and expires
+	// stalled transfers. Syncs reach the main thread in the order they
+	// arrived, whether they came in one message or in chunks.
+	private static final ScheduledExecutorService EXECUTOR = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactoryBuilder().setNameFormat("VintageTag Client Sync").setDaemon(true).build());
+
+	// Guards the transfer, chunks arrive on the network thread
+	private static final Object LOCK = new Object();
+	@Nullable
+	private static Transfer transfer;
+
 	@SideOnly(Side.CLIENT)
 	public static void register() {
 		if (NetworkSync.NETWORK == null) {
@@ -19,58 +46,184 @@ final class ClientNetworkSync {
 		}
 		NetworkSync.NETWORK.registerMessage(TagDataSyncHandler.class, NetworkSync.TagDataSyncMessage.class, 0,
 				Side.CLIENT);
+		NetworkSync.NETWORK.registerMessage(TagDataChunkHandler.class, NetworkSync.TagDataChunkMessage.class, 1,
+				Side.CLIENT);
 	}
 
-	@SideOnly(Side.CLIENT)
-	public static class TagDataSyncHandler implements IMessageHandler<NetworkSync.TagDataSyncMessage, IMessage> {
+	/**
+	 * Copies a chunk into its transfer. A chunk of another transfer replaces
+	 * the current one, the server only ever sends its latest tags.
+	 */
+	private static void receive(NetworkSync.TagDataChunkMessage chunk) {
+		Transfer complete;
+		synchronized (LOCK) {
+			if (transfer == null || transfer.id != chunk.transfer) {
+				if (transfer != null) {
+					TagLog.warn("Tag sync transfer {} was replaced after {} of {} chunks", transfer.id,
+							transfer.receivedCount, transfer.count);
+				}
+				transfer = new Transfer(chunk.transfer, chunk.count, chunk.checksum, new byte[chunk.totalSize]);
+				var started = transfer;
+				EXECUTOR.schedule(() -> expire(started), TRANSFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			} else if (transfer.count != chunk.count || transfer.checksum != chunk.checksum
+					|| transfer.frame.length != chunk.totalSize) {
+				TagLog.warn("Tag sync transfer {} sent a mismatched chunk, dropping it", transfer.id);
+				transfer = null;
+				return;
+			}
 
-		@Override
-		public IMessage onMessage(NetworkSync.TagDataSyncMessage message, MessageContext ctx) {
-			Minecraft.getMinecraft().addScheduledTask(() -> processClientSync(message));
-			return null;
+			if (transfer.received.get(chunk.index)) {
+				return;
+			}
+			System.arraycopy(chunk.data, 0, transfer.frame, chunk.offset, chunk.length);
+			transfer.received.set(chunk.index);
+			transfer.receivedCount++;
+			transfer.lastReceived = System.currentTimeMillis();
+
+			if (transfer.receivedCount < transfer.count) {
+				return;
+			}
+			complete = transfer;
+			transfer = null;
 		}
+		EXECUTOR.execute(() -> decode(complete));
+	}
+
+	private static void expire(Transfer expiring) {
+		synchronized (LOCK) {
+			if (transfer != expiring) {
+				return;
+			}
 
-		private void processClientSync(NetworkSync.TagDataSyncMessage message) {
-			if (message == null || message.tagData == null || message.type == null
-					|| message.type == NetworkSync.SyncType.NONE) {
+			long idle = System.currentTimeMillis() - expiring.lastReceived;
+			if (idle < TRANSFER_TIMEOUT_MILLIS) {
+				EXECUTOR.schedule(() -> expire(expiring), TRANSFER_TIMEOUT_MILLIS - idle, TimeUnit.MILLISECONDS);
 				return;
 			}
 
-			TagManager.clear();
-			processAllTags(message);
-			TagManager.bake();
+			TagLog.warn("Tag sync transfer {} timed out after {} of {} chunks", expiring.id,
+					expiring.receivedCount, expiring.count);
+			transfer = null;
 		}
+	}
 
-		private void processAllTags(NetworkSync.TagDataSyncMessage message) {
-			for (var itemEntry : message.tagData.itemTags().object2ObjectEntrySet()) {
-				var tagName = itemEntry.getKey();
-				var entries = itemEntry.getValue();
+	private static void decode(Transfer complete) {
+		var crc = new CRC32();
+		crc.update(complete.frame, 0, complete.frame.length);
+		if ((int) crc.getValue() != complete.checksum) {
+			TagLog.warn("Tag sync transfer {} failed its checksum, ignoring it", complete.id);
+			return;
+		}
 
-				if (!entries.isEmpty()) {
-					var keys = new ObjectOpenHashSet<>(entries);
-					TagManager.registerItem(keys, tagName);
-				}
+		NetworkSync.TagDataSyncMessage message;
+		try {
+			message = NetworkSync.TagDataSyncMessage.fromFrame(complete.frame);
+		} catch (RuntimeException e) {
+			TagLog.warn("Failed to decode tag sync transfer {}", complete.id, e);
+			return;
+		}
+		processClientSync(message);
+	}
+
+	/**
+	 * Builds the snapshot of a sync on {@link #EXECUTOR} and publishes it on
+	 * the main thread.
+	 */
+	private static void processClientSync(NetworkSync.TagDataSyncMessage message) {
+		if (message == null || message.tagData == null || message.type == null
+				|| message.type == NetworkSync.SyncType.NONE) {
+			return;
+		}
+
+		var itemContainer = new MutableTagContainer<ItemEntry>();
+		var fluidContainer = new MutableTagContainer<FluidEntry>();
+		var blockContainer = new MutableTagContainer<BlockEntry>();
+
+		TagManager.Snapshot snapshot;
+		try {
+			processAllTags(message, itemContainer, fluidContainer, blockContainer);
+			snapshot = new TagManager.Snapshot(itemContainer.build(), fluidContainer.build(), blockContainer.build());
+		} catch (RuntimeException e) {
+			// The executor would swallow it
+			TagLog.warn("Failed to build synced tags", e);
+			return;
+		}
+		Minecraft.getMinecraft().addScheduledTask(() -> TagManager.publish(snapshot));
+	}
+
+	private static void processAllTags(NetworkSync.TagDataSyncMessage message,
+			MutableTagContainer<ItemEntry> itemContainer, MutableTagContainer<FluidEntry> fluidContainer,
+			MutableTagContainer<BlockEntry> blockContainer) {
+		for (var itemEntry : message.tagData.itemTags().object2ObjectEntrySet()) {
+			var tagName = itemEntry.getKey();
+			var entries = itemEntry.getValue();
+
+			if (!entries.isEmpty()) {
+				var keys = new ObjectOpenHashSet<>(entries);
+				itemContainer.register(keys, tagName);
 			}
+		}
 
-			for (var fluidEntry : message.tagData.fluidTags().object2ObjectEntrySet()) {
-				var tagName = fluidEntry.getKey();
-				var entries = fluidEntry.getValue();
+		for (var fluidEntry : message.tagData.fluidTags().object2ObjectEntrySet()) {
+			var tagName = fluidEntry.getKey();
+			var entries = fluidEntry.getValue();
 
-				if (!entries.isEmpty()) {
-					var keys = new ObjectOpenHashSet<>(entries);
-					TagManager.registerFluid(keys, tagName);
-				}
+			if (!entries.isEmpty()) {
+				var keys = new ObjectOpenHashSet<>(entries);
+				fluidContainer.register(keys, tagName);
 			}
+		}
 
-			for (var blockEntry : message.tagData.blockTags().object2ObjectEntrySet()) {
-				var tagName = blockEntry.getKey();
-				var entries = blockEntry.getValue();
+		for (var blockEntry : message.tagData.blockTags().object2ObjectEntrySet()) {
+			var tagName = blockEntry.getKey();
+			var entries = blockEntry.getValue();
 
-				if (!entries.isEmpty()) {
-					var keys = new ObjectOpenHashSet<>(entries);
-					TagManager.registerBlock(keys, tagName);
-				}
+			if (!entries.isEmpty()) {
+				var keys = new ObjectOpenHashSet<>(entries);
+				blockContainer.register(keys, tagName);
 			}
 		}
 	}
+
+	@SideOnly(Side.CLIENT)
+	public static class TagDataSyncHandler implements IMessageHandler<NetworkSync.TagDataSyncMessage, IMessage> {
+
+		@Override
+		public IMessage onMessage(NetworkSync.TagDataSyncMessage message, MessageContext ctx) {
+			EXECUTOR.execute(() -> processClientSync(message));
+			return null;
+		}
+	}
+
+	@SideOnly(Side.CLIENT)
+	public static class TagDataChunkHandler implements IMessageHandler<NetworkSync.TagDataChunkMessage, IMessage> {
+
+		@Override
+		public IMessage onMessage(NetworkSync.TagDataChunkMessage message, MessageContext ctx) {
+			receive(message);
+			return null;
+		}
+	}
+
+	/**
+	 * A frame being reassembled; the buffer is allocated at its full size from
+	 * the first chunk.
+	 */
+	private static final class Transfer {
+		final int id;
+		final int count;
+		final int checksum;
+		final byte[] frame;
+		final BitSet received;
+		int receivedCount;
+		long lastReceived = System.currentTimeMillis();
+
+		Transfer(int id, int count, int checksum, byte[] frame) {
+			this.id = id;
+			this.count = count;
+			this.checksum = checksum;
+			this.frame = frame;
+			this.received = new BitSet(count);
+		}
+	}
 }
@@ -0,0 +1,79 @@
+package com.gardenevery.vintagetag;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nonnull;
+
+import com.gardenevery.vintagetag.TagEntry.ItemEntry.ItemKey;
+
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import net.minecraft.creativetab.CreativeTabs;
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraft.util.NonNullList;
+import net.minecraftforge.fml.common.registry.ForgeRegistries;
+
+/**
+ * The subtypes an item lists in the search tab, i.e. what an ore dictionary
+ * wildcard of that item stands for.
+ * <p>
+ * Tags keep wildcards as one {@link TagEntry.ItemEntry.ItemRange}; only
+ * enumerating a tag's stacks needs the subtypes, so they are expanded on first
+ * request and cached per item for as long as the item registry keeps its
+ * size. Each subtype is one {@link ItemKey} per metadata. Expansion always
+ * runs on the calling thread: {@link Item#getSubItems} is item code that many
+ * mods never meant to be called concurrently.
+ */
+final class ItemSubtypes {
+	private static final Map<Item, List<ItemKey>> CACHE = new ConcurrentHashMap<>();
+	private static volatile int registrySize = -1;
+
+	@Nonnull
+	public static List<ItemKey> get(@Nonnull Item item) {
+		validate();
+		var cached = CACHE.get(item);
+		if (cached == null) {
+			cached = expand(item);
+			CACHE.put(item, cached);
+		}
+		return cached;
+	}
+
+	/**
+	 * Drops the cached expansions if items were added to the registry since
+	 * they were made.
+	 */
+	private static void validate() {
+		int size = ForgeRegistries.ITEMS.getValuesCollection().size();
+		if (size != registrySize) {
+			CACHE.clear();
+			registrySize = size;
+		}
+	}
+
+	private static List<ItemKey> expand(Item item) {
+		try {
+			return subtypes(item);
+		} catch (Exception e) {
+			return Collections.emptyList();
+		}
+	}
+
+	private static List<ItemKey> subtypes(Item item) {
+		NonNullList<ItemStack> stacks = NonNullList.create();
+		item.getSubItems(CreativeTabs.SEARCH, stacks);
+
+		var metadata = new IntOpenHashSet(stacks.size());
+		var keys = new ObjectArrayList<ItemKey>(stacks.size());
+		for (var stack : stacks) {
+			if (!stack.isEmpty() && stack.getItem() == item && metadata.add(stack.getMetadata())) {
+				keys.add(new ItemKey(item, stack.getMetadata()));
+			}
+		}
+		return Collections.unmodifiableList(keys);
+	}
+}
@@ -1,6 +1,12 @@
 package com.gardenevery.vintagetag;
 
+import java.io.ByteArrayOutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 import javax.annotation.Nullable;
 
 import com.gardenevery.vintagetag.TagEntry.BlockEntry;
@@ -9,10 +15,12 @@ import com.gardenevery.vintagetag.TagEntry.FluidEntry;
 import com.gardenevery.vintagetag.TagEntry.FluidEntry.FluidKey;
 import com.gardenevery.vintagetag.TagEntry.ItemEntry;
 import com.gardenevery.vintagetag.TagEntry.ItemEntry.ItemKey;
+import com.gardenevery.vintagetag.TagEntry.ItemEntry.ItemRange;
 import com.github.bsideup.jabel.Desugar;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 import it.unimi.dsi.fastutil.objects.Object2ObjectMap;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
@@ -32,6 +40,21 @@ import net.minecraftforge.fml.relauncher.Side;
 final class NetworkSync {
 	public static SimpleNetworkWrapper NETWORK;
 	private static final int MAX_PACKET_SIZE = 2 * 1024 * 1024;
+	// Larger frames are split into chunks of this size
+	static final int CHUNK_SIZE = 32 * 1024;
+	// Upper bound of a reassembled frame, checked before the client allocates it
+	static final int MAX_TRANSFER_SIZE = 64 * 1024 * 1024;
+	// Upper bound of an inflated payload, checked before anything is inflated
+	private static final int MAX_PAYLOAD_SIZE = 128 * 1024 * 1024;
+
+	// Older servers start the payload with the sync type, which is always below this
+	private static final int PROTOCOL_VERSION = 2;
+	private static final int COMPRESSION_NONE = 0;
+	private static final int COMPRESSION_DEFLATE = 1;
+	// Higher levels take many times as long for a few percent on tag data
+	private static final int COMPRESSION_LEVEL = 6;
+	// Smaller payloads are not worth compressing
+	private static final int COMPRESSION_THRESHOLD = 1024;
 
 	public enum SyncType {
 		NONE, FULL
@@ -40,6 +63,7 @@ final class NetworkSync {
 	public static void register() {
 		NETWORK = NetworkRegistry.INSTANCE.newSimpleChannel("VintageTag");
 		NETWORK.registerMessage((message, ctx) -> null, TagDataSyncMessage.class, 0, Side.CLIENT);
+		NETWORK.registerMessage((message, ctx) -> null, TagDataChunkMessage.class, 1, Side.CLIENT);
 	}
 
 	public static void sync(@Nullable EntityPlayerMP player) {
@@ -48,15 +72,25 @@ final class NetworkSync {
 			return;
 		}
 
-		var tagData = collectTagData();
-		var message = new TagDataSyncMessage(SyncType.FULL, tagData);
+		try (var ignored = TagProfiler.section("network")) {
+			var tagData = collectTagData();
+			var message = new TagDataSyncMessage(SyncType.FULL, tagData);
+			var frame = message.frame();
+			var packets = frame.length <= CHUNK_SIZE ? new IMessage[] { message } : TagDataChunkMessage.split(frame);
 
-		if (player == null) {
-			for (var onlinePlayer : server.getPlayerList().getPlayers()) {
-				NETWORK.sendTo(message, onlinePlayer);
+			if (player == null) {
+				for (var onlinePlayer : server.getPlayerList().getPlayers()) {
+					send(packets, onlinePlayer);
+				}
+			} else {
+				send(packets, player);
 			}
-		} else {
-			NETWORK.sendTo(message, player);
+		}
+	}
+
+	private static void send(IMessage[] packets, EntityPlayerMP player) {
+		for (var packet : packets) {
+			NETWORK.sendTo(packet, player);
 		}
 	}
 
@@ -79,7 +113,7 @@ final class NetworkSync {
 			if (!keys.isEmpty()) {
 				var entries = new ObjectArrayList<ItemEntry>(keys.size());
 				for (var key : keys) {
-					if (key.isKey()) {
+					if (key.isKey() || key.isRange()) {
 						entries.add(key);
 					}
 				}
@@ -163,6 +197,8 @@ final class NetworkSync {
 	public static class TagDataSyncMessage implements IMessage {
 		public SyncType type;
 		public TagData tagData;
+		@Nullable
+		private byte[] encoded;
 
 		public TagDataSyncMessage() {
 		}
@@ -172,9 +208,57 @@ final class NetworkSync {
 			this.tagData = tagData;
 		}
 
+		/**
+		 * Decodes a frame reassembled from {@link TagDataChunkMessage}s.
+		 */
+		static TagDataSyncMessage fromFrame(byte[] frame) {
+			var message = new TagDataSyncMessage();
+			message.readFrame(Unpooled.wrappedBuffer(frame));
+			return message;
+		}
+
 		@Override
 		public void fromBytes(ByteBuf buf) {
 			validatePacketIntegrity(buf);
+			readFrame(buf);
+		}
+
+		private void readFrame(ByteBuf buf) {
+			if (!buf.isReadable()) {
+				throw new IllegalArgumentException("Packet too small, missing protocol version");
+			}
+
+			int start = buf.readerIndex();
+			int version = buf.readUnsignedByte();
+			if (version < PROTOCOL_VERSION) {
+				// Unversioned payload of an older server, starting with the sync type
+				buf.readerIndex(start);
+				decode(buf);
+				return;
+			}
+			if (version > PROTOCOL_VERSION) {
+				throw new IllegalArgumentException("Unsupported tag sync protocol: " + version);
+			}
+
+			int compression = buf.readUnsignedByte();
+			if (compression == COMPRESSION_NONE) {
+				decode(buf);
+			} else if (compression == COMPRESSION_DEFLATE) {
+				int size = buf.readInt();
+				if (size < 1 || size > MAX_PAYLOAD_SIZE) {
+					throw new IllegalArgumentException(
+							String.format("Invalid payload size: %d bytes, max allowed: %d", size, MAX_PAYLOAD_SIZE));
+				}
+				decode(Unpooled.wrappedBuffer(inflate(buf, size)));
+			} else {
+				throw new IllegalArgumentException("Unknown tag sync compression: " + compression);
+			}
+		}
+
+		private void decode(ByteBuf buf) {
+			if (!buf.isReadable()) {
+				throw new IllegalArgumentException("Packet too small, missing sync type");
+			}
 
 			int st = buf.readUnsignedByte();
 			type = readSyncType(st);
@@ -188,7 +272,23 @@ final class NetworkSync {
 
 		@Override
 		public void toBytes(ByteBuf buf) {
-			var tempBuf = buf.alloc().buffer();
+			buf.writeBytes(frame());
+		}
+
+		/**
+		 * The encoded message. One message is sent to every player, so it is
+		 * only encoded once.
+		 */
+		byte[] frame() {
+			if (encoded == null) {
+				encoded = encode();
+			}
+			return encoded;
+		}
+
+		private byte[] encode() {
+			var tempBuf = Unpooled.buffer();
+			byte[] payload;
 
 			try {
 				tempBuf.writeByte(type.ordinal());
@@ -196,22 +296,103 @@ final class NetworkSync {
 				writeFluidTags(tempBuf, tagData.fluidTags());
 				writeBlockTags(tempBuf, tagData.blockTags());
 
-				int totalSize = tempBuf.readableBytes();
-				validateSize(totalSize);
-
-				buf.writeBytes(tempBuf);
+				payload = new byte[tempBuf.readableBytes()];
+				tempBuf.readBytes(payload);
 			} finally {
 				tempBuf.release();
 			}
+
+			if (payload.length > MAX_PAYLOAD_SIZE) {
+				throw new IllegalArgumentException(
+						String.format("Tag data too large: %d bytes, max allowed: %d", payload.length, MAX_PAYLOAD_SIZE));
+			}
+
+			byte[] compressed = null;
+			if (TagConfig.compressSync && payload.length >= COMPRESSION_THRESHOLD) {
+				compressed = deflate(payload);
+				TagLog.debug("Tag sync payload: {} bytes, {} compressed", payload.length, compressed.length);
+				if (compressed.length >= payload.length) {
+					compressed = null;
+				}
+			}
+
+			var frame = Unpooled.buffer(compressed != null ? compressed.length + 6 : payload.length + 2);
+			frame.writeByte(PROTOCOL_VERSION);
+			if (compressed != null) {
+				frame.writeByte(COMPRESSION_DEFLATE);
+				frame.writeInt(payload.length);
+				frame.writeBytes(compressed);
+			} else {
+				frame.writeByte(COMPRESSION_NONE);
+				frame.writeBytes(payload);
+			}
+
+			int totalSize = frame.readableBytes();
+			if (totalSize > MAX_TRANSFER_SIZE) {
+				throw new IllegalArgumentException(
+						String.format("Tag data too large: %d bytes, max allowed: %d", totalSize, MAX_TRANSFER_SIZE));
+			}
+
+			var bytes = new byte[totalSize];
+			frame.readBytes(bytes);
+			return bytes;
+		}
+
+		private static byte[] deflate(byte[] payload) {
+			var deflater = new Deflater(COMPRESSION_LEVEL);
+			try {
+				deflater.setInput(payload);
+				deflater.finish();
+
+				var out = new ByteArrayOutputStream(Math.max(64, payload.length / 8));
+				var chunk = new byte[8192];
+				while (!deflater.finished()) {
+					int length = deflater.deflate(chunk);
+					out.write(chunk, 0, length);
+				}
+				return out.toByteArray();
+			} finally {
+				deflater.end();
+			}
+		}
+
+		/**
+		 * Inflates exactly {@code size} bytes; never allocates more than that,
+		 * whatever the compressed data claims.
+		 */
+		private static byte[] inflate(ByteBuf buf, int size) {
+			var input = new byte[buf.readableBytes()];
+			buf.readBytes(input);
+
+			var inflater = new Inflater();
+			try {
+				inflater.setInput(input);
+				var output = new byte[size];
+				int read = 0;
+				while (read < size) {
+					int length = inflater.inflate(output, read, size - read);
+					if (length == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+						break;
+					}
+					read += length;
+				}
+
+				// Anything left over means the data is larger than declared
+				if (read != size || inflater.inflate(new byte[1]) != 0 || !inflater.finished()) {
+					throw new IllegalArgumentException("Compressed tag data does not match its declared size: " + size);
+				}
+				return output;
+			} catch (DataFormatException e) {
+				throw new IllegalArgumentException("Corrupt compressed tag data", e);
+			} finally {
+				inflater.end();
+			}
 		}
 
 		private void validatePacketIntegrity(ByteBuf buf) {
 			int totalSize = buf.readableBytes();
 			validateSize(totalSize);
 
-			if (totalSize < 1) {
-				throw new IllegalArgumentException("Packet too small, missing sync type");
-			}
 		}
 
 		private Object2ObjectMap<String, ObjectArrayList<ItemEntry>> readItemTags(ByteBuf buf) {
@@ -310,6 +491,9 @@ final class NetworkSync {
 
 			int metadata = buf.readInt();
 			var item = Item.getItemById(id);
+			if (metadata < 0) {
+				return TagEntry.itemRange(item, -metadata - 1, buf.readInt());
+			}
 			return TagEntry.item(item, metadata);
 		}
 
@@ -398,6 +582,11 @@ final class NetworkSync {
 			if (entry instanceof ItemKey key) {
 				buf.writeInt(Item.getIdFromItem(key.item()));
 				buf.writeInt(key.metadata());
+			} else if (entry instanceof ItemRange range) {
+				// A negative metadata marks a range: -(min + 1), followed by max
+				buf.writeInt(Item.getIdFromItem(range.item()));
+				buf.writeInt(-range.min() - 1);
+				buf.writeInt(range.max());
 			}
 		}
 
@@ -468,6 +657,98 @@ final class NetworkSync {
 		}
 	}
 
+	/**
+	 * One part of a frame too large for a single {@link TagDataSyncMessage}.
+	 * Every chunk repeats the transfer header, so the client can preallocate
+	 * the frame from whichever chunk arrives first; the CRC32 covers the whole
+	 * frame.
+	 */
+	public static class TagDataChunkMessage implements IMessage {
+		private static final AtomicInteger NEXT_TRANSFER = new AtomicInteger();
+
+		public int transfer;
+		public int index;
+		public int count;
+		public int totalSize;
+		public int checksum;
+		// Where this chunk starts in the frame
+		public int offset;
+		public int length;
+		// The whole frame when sending, only this chunk when received
+		public byte[] data;
+
+		public TagDataChunkMessage() {
+		}
+
+		private TagDataChunkMessage(int transfer, int index, int count, int checksum, byte[] frame) {
+			this.transfer = transfer;
+			this.index = index;
+			this.count = count;
+			this.totalSize = frame.length;
+			this.checksum = checksum;
+			this.data = frame;
+			this.offset = index * CHUNK_SIZE;
+			this.length = Math.min(CHUNK_SIZE, frame.length - offset);
+		}
+
+		static TagDataChunkMessage[] split(byte[] frame) {
+			var crc = new CRC32();
+			crc.update(frame, 0, frame.length);
+			int checksum = (int) crc.getValue();
+			int transfer = NEXT_TRANSFER.incrementAndGet();
+			int count = chunkCount(frame.length);
+
+			var chunks = new TagDataChunkMessage[count];
+			for (int i = 0; i < count; i++) {
+				chunks[i] = new TagDataChunkMessage(transfer, i, count, checksum, frame);
+			}
+			TagLog.debug("Sending {} bytes of tag data in {} chunks", frame.length, count);
+			return chunks;
+		}
+
+		@Override
+		public void fromBytes(ByteBuf buf) {
+			transfer = buf.readInt();
+			index = buf.readInt();
+			count = buf.readInt();
+			totalSize = buf.readInt();
+			checksum = buf.readInt();
+
+			if (totalSize < 1 || totalSize > MAX_TRANSFER_SIZE) {
+				throw new IllegalArgumentException(
+						String.format("Invalid transfer size: %d bytes, max allowed: %d", totalSize, MAX_TRANSFER_SIZE));
+			}
+			if (count != chunkCount(totalSize) || index < 0 || index >= count) {
+				throw new IllegalArgumentException(
+						String.format("Invalid chunk %d of %d for %d bytes", index, count, totalSize));
+			}
+
+			offset = index * CHUNK_SIZE;
+			length = Math.min(CHUNK_SIZE, totalSize - offset);
+			if (buf.readableBytes() != length) {
+				throw new IllegalArgumentException(
+						String.format("Chunk %d has %d bytes, expected %d", index, buf.readableBytes(), length));
+			}
+
+			data = new byte[length];
+			buf.readBytes(data);
+		}
+
+		@Override
+		public void toBytes(ByteBuf buf) {
+			buf.writeInt(transfer);
+			buf.writeInt(index);
+			buf.writeInt(count);
+			buf.writeInt(totalSize);
+			buf.writeInt(checksum);
+			buf.writeBytes(data, offset, length);
+		}
+
+		private static int chunkCount(int size) {
+			return (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+		}
+	}
+
 	@Desugar
 	public record TagData(Object2ObjectMap<String, ObjectArrayList<ItemEntry>> itemTags,
 			Object2ObjectMap<String, ObjectArrayList<FluidEntry>> fluidTags,
@@ -0,0 +1,147 @@
+package com.gardenevery.vintagetag;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.gardenevery.vintagetag.TagEntry.ItemEntry.ItemKey;
+import com.gardenevery.vintagetag.TagEntry.ItemEntry.ItemRange;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+
+import net.minecraft.item.ItemStack;
+import net.minecraftforge.oredict.OreDictionary;
+
+/**
+ * Registers the item tags of the namespaces listed in
+ * {@link TagConfig#oreExportNamespaces} with the ore dictionary, so mods that
+ * only know the ore dictionary see them too. The tag path becomes the ore
+ * name: with "ore" listed, tag "ore:ingotIron" is registered as "ingotIron".
+ * <p>
+ * Runs on the main thread after each load. All registrations are collected
+ * first and then made in one pass; entries exported by an earlier load are
+ * not registered again. The ore dictionary cannot unregister, so entries
+ * removed from a tag stay registered until restart. Wildcard ranges are
+ * registered as one {@link OreDictionary#WILDCARD_VALUE} stack. Stacks the
+ * ore name already has are left alone.
+ * <p>
+ * The registrations are never fed back into the tags: they come from the tags,
+ * so reloading for them would change nothing. {@link OreDictSync} ignores
+ * them when they are registered and skips them in its full walk (see
+ * {@link #isExported}), and {@link TagCache} leaves them out of its
+ * fingerprint, so the ore dictionary looks to both as it did before any
+ * export.
+ */
+final class OreDictExport {
+	// "oreName item metadata" of everything registered so far; read by the loading thread
+	private static final Set<String> EXPORTED = ConcurrentHashMap.newKeySet();
+
+	public static void export() {
+		var namespaces = TagConfig.oreExportNamespaces;
+		if (namespaces.length == 0) {
+			return;
+		}
+
+		var tag = TagManager.item();
+		var existing = new ObjectOpenHashSet<String>();
+		var names = new ObjectArrayList<String>();
+		var stacks = new ObjectArrayList<ItemStack>();
+		int tags = 0;
+
+		for (var tagName : tag.getAllTags()) {
+			var oreName = oreName(tagName, namespaces);
+			if (oreName == null) {
+				continue;
+			}
+
+			existing.clear();
+			for (var stack : OreDictionary.getOres(oreName, false)) {
+				if (stack != null && !stack.isEmpty()) {
+					existing.add(key(oreName, stack));
+				}
+			}
+
+			int before = stacks.size();
+			for (var entry : tag.getKeys(tagName)) {
+				if (entry instanceof ItemKey key) {
+					add(oreName, key.getStack(), existing, names, stacks);
+				} else if (entry instanceof ItemRange range) {
+					if (range.isWildcard()) {
+						add(oreName, new ItemStack(range.item(), 1, OreDictionary.WILDCARD_VALUE), existing, names,
+								stacks);
+					} else {
+						for (var stack : range.getStacks()) {
+							add(oreName, stack, existing, names, stacks);
+						}
+					}
+				}
+			}
+
+			if (stacks.size() > before) {
+				tags++;
+			}
+		}
+
+		if (stacks.isEmpty()) {
+			return;
+		}
+
+		OreDictSync.ignoreOwnRegistrations(true);
+		try {
+			for (int i = 0; i < stacks.size(); i++) {
+				OreDictionary.registerOre(names.get(i), stacks.get(i));
+			}
+		} finally {
+			OreDictSync.ignoreOwnRegistrations(false);
+		}
+		TagLog.info("Exported {} items from {} tags to the OreDictionary", stacks.size(), tags);
+	}
+
+	/**
+	 * Whether the stack is in the ore dictionary under that name only because
+	 * it was exported from a tag.
+	 */
+	public static boolean isExported(@Nonnull String oreName, @Nonnull ItemStack stack) {
+		return !EXPORTED.isEmpty() && EXPORTED.contains(key(oreName, stack));
+	}
+
+	/**
+	 * Called for a registration that did not come from the export: if it
+	 * matches an exported one, the stack is now also a genuine ore.
+	 */
+	public static void onRegisteredElsewhere(@Nonnull String oreName, @Nonnull ItemStack stack) {
+		if (!EXPORTED.isEmpty()) {
+			EXPORTED.remove(key(oreName, stack));
+		}
+	}
+
+	@Nullable
+	private static String oreName(String tagName, String[] namespaces) {
+		int colon = tagName.indexOf(':');
+		if (colon <= 0 || colon == tagName.length() - 1) {
+			return null;
+		}
+
+		for (var namespace : namespaces) {
+			if (tagName.regionMatches(0, namespace, 0, colon) && namespace.length() == colon) {
+				return tagName.substring(colon + 1);
+			}
+		}
+		return null;
+	}
+
+	private static void add(String oreName, ItemStack stack, Set<String> existing, ObjectArrayList<String> names,
+			ObjectArrayList<ItemStack> stacks) {
+		var key = key(oreName, stack);
+		if (stack.getItem().getRegistryName() != null && !existing.contains(key) && EXPORTED.add(key)) {
+			names.add(oreName);
+			stacks.add(stack);
+		}
+	}
+
+	private static String key(String oreName, ItemStack stack) {
+		return oreName + " " + stack.getItem().getRegistryName() + " " + stack.getMetadata();
+	}
+}
@@ -1,30 +1,118 @@
 package com.gardenevery.vintagetag;
 
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2ObjectMap;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 import it.unimi.dsi.fastutil.objects.ObjectSet;
 
 import com.gardenevery.vintagetag.TagEntry.ItemEntry;
+import com.gardenevery.vintagetag.TagEntry.ItemEntry.ItemKey;
+import com.gardenevery.vintagetag.TagEntry.ItemEntry.ItemRange;
+import com.gardenevery.vintagetag.TagParser.RawEntry;
+import com.gardenevery.vintagetag.TagSources.Contribution;
 
-import net.minecraft.creativetab.CreativeTabs;
-import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
-import net.minecraft.util.NonNullList;
+import net.minecraft.server.MinecraftServer;
+import net.minecraftforge.fml.common.FMLCommonHandler;
+import net.minecraftforge.fml.common.eventhandler.SubscribeEvent;
 import net.minecraftforge.oredict.OreDictionary;
 
+/**
+ * Mirrors the ore dictionary into item tags.
+ * <p>
+ * The first sync walks every ore name. After the first load, ores registered
+ * later are picked up from {@link OreDictionary.OreRegisterEvent}: changes are
+ * collected per ore name and, once no new registration arrived for
+ * {@link #DEBOUNCE_MILLIS}, applied in one {@link ReloadScope#ORE_DICTIONARY}
+ * reload. Each ore name is its own {@link TagSources} source whose key is
+ * replaced on change, so that reload only folds the ore tags that changed.
+ * <p>
+ * A wildcard stack becomes one wildcard {@link ItemRange} of its item rather
+ * than one key per subtype; lookups match it per item and enumeration expands
+ * it through {@link ItemSubtypes} only when asked.
+ * <p>
+ * Entries {@link OreDictExport} registered from tags are never read back,
+ * neither by the full walk nor from events; otherwise a reload after an
+ * export would see tags it produced itself as ore entries.
+ */
 final class OreDictSync {
+	static final String SOURCE = "ore";
+	private static final long DEBOUNCE_MILLIS = 500;
+	// A steady stream of registrations still gets applied this often
+	private static final long MAX_DELAY_MILLIS = 5000;
+
+	private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+			new ThreadFactoryBuilder().setNameFormat("VintageTag Ore Sync").setDaemon(true).build());
+
+	// Guards everything below, events may come from any thread
+	private static final Object LOCK = new Object();
 	private static boolean hasSynced = false;
-	private static final Object2ObjectMap<String, ObjectSet<ItemEntry>> ORE_CACHE = new Object2ObjectOpenHashMap<>();
+	private static volatile boolean listening = false;
+	// The thread OreDictExport registers tags on; those are not ore changes
+	@Nullable
+	private static volatile Thread exporting;
+	private static final Object2ObjectMap<String, ObjectSet<ItemEntry>> ORE_CACHE = new Object2ObjectLinkedOpenHashMap<>();
+	private static final Object2ObjectMap<String, ObjectSet<ItemEntry>> PENDING = new Object2ObjectOpenHashMap<>();
+	private static boolean pendingReload = false;
+	private static long firstPending;
+	@Nullable
+	private static ScheduledFuture<?> scheduled;
 
 	public static void sync() {
-		if (hasSynced) {
-			applyCachedTags(false);
-			return;
+		synchronized (LOCK) {
+			if (scheduled == null) {
+				pendingReload = false;
+			}
+
+			if (hasSynced) {
+				applyPending();
+				applyCachedTags(false);
+				return;
+			}
+
+			hasSynced = true;
+			PENDING.clear();
+			syncAllOreDict();
 		}
+	}
+
+	/**
+	 * Starts following ore registrations; called once the first load was
+	 * published.
+	 */
+	public static void listen() {
+		listening = true;
+	}
 
-		hasSynced = true;
-		syncAllOreDict();
+	/**
+	 * Ignores registrations made by the calling thread until called again
+	 * with false, so exporting tags does not trigger a reload of its own.
+	 */
+	public static void ignoreOwnRegistrations(boolean ignore) {
+		exporting = ignore ? Thread.currentThread() : null;
+	}
+
+	/**
+	 * Applies changes that arrived while no server was running.
+	 */
+	public static void onServerStarting(@Nonnull MinecraftServer server) {
+		synchronized (LOCK) {
+			if (pendingReload) {
+				schedule();
+			}
+		}
 	}
 
 	private static void syncAllOreDict() {
@@ -45,21 +133,10 @@ final class OreDictSync {
 		ObjectSet<ItemEntry> entries = new ObjectOpenHashSet<>();
 
 		for (var stack : ores) {
-			if (stack == null || stack.isEmpty()) {
+			if (stack != null && !stack.isEmpty() && OreDictExport.isExported(oreName, stack)) {
 				continue;
 			}
-
-			try {
-				if (stack.getMetadata() == OreDictionary.WILDCARD_VALUE && stack.getItem().getHasSubtypes()) {
-					var wildcardEntries = syncWildcardEntry(stack.getItem());
-					entries.addAll(wildcardEntries);
-				} else {
-					var entry = TagEntry.item(stack);
-					entries.add(entry);
-				}
-			} catch (Exception e) {
-				//
-			}
+			addStack(stack, entries);
 		}
 
 		if (!entries.isEmpty()) {
@@ -67,13 +144,68 @@ final class OreDictSync {
 		}
 	}
 
+	private static void addStack(@Nullable ItemStack stack, ObjectSet<ItemEntry> entries) {
+		if (stack == null || stack.isEmpty()) {
+			return;
+		}
+
+		try {
+			if (isWildcard(stack)) {
+				entries.add(TagEntry.itemRange(stack.getItem(), 0, OreDictionary.WILDCARD_VALUE));
+			} else {
+				var entry = TagEntry.item(stack);
+				entries.add(entry);
+			}
+		} catch (Exception e) {
+			//
+		}
+	}
+
+	/**
+	 * Merges the collected registrations into the cache. Changed ore names get
+	 * a new set, so their sources no longer match the previous load.
+	 */
+	private static void applyPending() {
+		if (PENDING.isEmpty()) {
+			return;
+		}
+
+		int added = 0;
+		for (var entry : PENDING.object2ObjectEntrySet()) {
+			var previous = ORE_CACHE.get(entry.getKey());
+			var merged = previous != null ? new ObjectOpenHashSet<>(previous) : new ObjectOpenHashSet<ItemEntry>();
+			if (merged.addAll(entry.getValue())) {
+				ORE_CACHE.put(entry.getKey(), merged);
+				added++;
+			}
+		}
+		TagLog.info("OreDictionary changed, {} of {} ore names updated", added, PENDING.size());
+		PENDING.clear();
+	}
+
 	private static void applyCachedTags(boolean showLog) {
 		int totalItems = 0;
 		int totalTags = ORE_CACHE.size();
 
 		for (Object2ObjectMap.Entry<String, ObjectSet<ItemEntry>> entry : ORE_CACHE.object2ObjectEntrySet()) {
-			TagManager.registerItem(entry.getValue(), entry.getKey());
 			totalItems += entry.getValue().size();
+
+			// Sets are replaced, never changed, so they can serve as their own source key
+			var id = SOURCE + ":" + entry.getKey();
+			if (TagSources.reuse(id, entry.getValue())) {
+				continue;
+			}
+
+			var values = new ObjectArrayList<RawEntry>(entry.getValue().size());
+			for (var item : entry.getValue()) {
+				if (item instanceof ItemKey key && key.item().getRegistryName() != null) {
+					values.add(new RawEntry(key.item().getRegistryName().toString(), key.metadata()));
+				} else if (item instanceof ItemRange range && range.item().getRegistryName() != null) {
+					values.add(new RawEntry(range.item().getRegistryName().toString(), range.min(), range.max()));
+				}
+			}
+			TagSources.add(id, entry.getValue(), Collections.singletonList(
+					new Contribution(TagType.ITEM, entry.getKey(), false, values)));
 		}
 
 		if (showLog) {
@@ -81,16 +213,67 @@ final class OreDictSync {
 		}
 	}
 
-	private static ObjectSet<ItemEntry> syncWildcardEntry(Item item) {
-		NonNullList<ItemStack> stacks = NonNullList.create();
-		item.getSubItems(CreativeTabs.SEARCH, stacks);
+	private static boolean isWildcard(ItemStack stack) {
+		return stack.getMetadata() == OreDictionary.WILDCARD_VALUE && stack.getItem().getHasSubtypes();
+	}
 
-		ObjectSet<ItemEntry> entries = new ObjectOpenHashSet<>(stacks.size());
+	/**
+	 * Queues a registration. Its entries are built right away on the
+	 * registering thread, which is where item code expects to be called.
+	 */
+	private static void onOreRegistered(String oreName, ItemStack stack) {
+		if (oreName == null || oreName.isEmpty() || exporting == Thread.currentThread()) {
+			return;
+		}
+		if (stack != null && !stack.isEmpty()) {
+			OreDictExport.onRegisteredElsewhere(oreName, stack);
+		}
+		if (!listening || !TagConfig.enableOreSync) {
+			return;
+		}
+
+		synchronized (LOCK) {
+			// Before the first sync, its full walk will see the ore anyway
+			if (hasSynced) {
+				var entries = PENDING.computeIfAbsent(oreName, k -> new ObjectOpenHashSet<>());
+				addStack(stack, entries);
+			}
+
+			if (!pendingReload) {
+				pendingReload = true;
+				firstPending = System.currentTimeMillis();
+			}
+			schedule();
+		}
+	}
 
-		for (var stack : stacks) {
-			entries.add(TagEntry.item(stack));
+	private static void schedule() {
+		if (scheduled != null) {
+			if (System.currentTimeMillis() - firstPending >= MAX_DELAY_MILLIS) {
+				return;
+			}
+			scheduled.cancel(false);
 		}
+		scheduled = SCHEDULER.schedule(OreDictSync::flush, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+	}
 
-		return entries;
+	private static void flush() {
+		MinecraftServer server = FMLCommonHandler.instance().getMinecraftServerInstance();
+		synchronized (LOCK) {
+			scheduled = null;
+			if (server == null) {
+				// Kept pending until a server starts or the next load
+				return;
+			}
+			pendingReload = false;
+		}
+		TagReloader.reloadAsync(server, null, ReloadScope.ORE_DICTIONARY);
+	}
+
+	public static final class EventHandler {
+		@SubscribeEvent
+		public void onOreRegister(OreDictionary.OreRegisterEvent event) {
+			onOreRegistered(event.getName(), event.getOre());
+		}
 	}
 }
@@ -0,0 +1,156 @@
+package com.gardenevery.vintagetag;
+
+import java.util.Arrays;
+import javax.annotation.Nonnull;
+
+import com.gardenevery.vintagetag.TagEntry.ItemEntry;
+import com.gardenevery.vintagetag.TagEntry.ItemEntry.ItemKey;
+import com.gardenevery.vintagetag.TagEntry.ItemEntry.ItemRange;
+import com.github.bsideup.jabel.Desugar;
+import com.google.common.collect.ImmutableSet;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+
+import net.minecraft.item.Item;
+import net.minecraft.item.ItemStack;
+import net.minecraftforge.oredict.OreDictionary;
+
+/**
+ * The ore names of every item stack, taken from one item tag snapshot: the
+ * item tags named like an ore dictionary entry.
+ * <p>
+ * Everything is precomputed, so {@link #get(ItemStack)} allocates nothing: an
+ * item maps to the name sets of its explicit metadata, and its ranges
+ * (wildcards included) are cut into segments that each have one name set,
+ * found by binary search. Equal name sets are shared.
+ * <p>
+ * Built together with the snapshot, off the main thread where possible, and
+ * published with it by {@link TagManager#publish(TagManager.Snapshot)}.
+ */
+final class OreNameIndex {
+	static final OreNameIndex EMPTY = new OreNameIndex(new Reference2ObjectOpenHashMap<>());
+
+	private final Reference2ObjectOpenHashMap<Item, ItemNames> items;
+
+	private OreNameIndex(Reference2ObjectOpenHashMap<Item, ItemNames> items) {
+		this.items = items;
+	}
+
+	@Nonnull
+	public ImmutableSet<String> get(@Nonnull ItemStack stack) {
+		var item = stack.getItem();
+		var names = items.get(item);
+		if (names == null) {
+			return ImmutableSet.of();
+		}
+		return names.get(item.getHasSubtypes() ? stack.getMetadata() : 0);
+	}
+
+	@Nonnull
+	public static OreNameIndex build(@Nonnull Tag<ItemEntry> tag) {
+		var metadata = new Reference2ObjectOpenHashMap<Item, Int2ObjectOpenHashMap<ObjectOpenHashSet<String>>>();
+		var ranges = new Reference2ObjectOpenHashMap<Item, ObjectArrayList<NamedRange>>();
+
+		for (var oreName : OreDictionary.getOreNames()) {
+			if (oreName == null || !tag.exists(oreName)) {
+				continue;
+			}
+
+			for (var entry : tag.getKeys(oreName)) {
+				if (entry instanceof ItemKey key) {
+					metadata.computeIfAbsent(key.item(), k -> new Int2ObjectOpenHashMap<>())
+							.computeIfAbsent(key.metadata(), k -> new ObjectOpenHashSet<>()).add(oreName);
+				} else if (entry instanceof ItemRange range) {
+					ranges.computeIfAbsent(range.item(), k -> new ObjectArrayList<>())
+							.add(new NamedRange(range.min(), range.max(), oreName));
+				}
+			}
+		}
+
+		var shared = new Object2ObjectOpenHashMap<ObjectOpenHashSet<String>, ImmutableSet<String>>();
+		var items = new Reference2ObjectOpenHashMap<Item, ItemNames>();
+		var owners = new ObjectOpenHashSet<Item>(metadata.keySet());
+		owners.addAll(ranges.keySet());
+
+		for (var item : owners) {
+			var itemRanges = ranges.get(item);
+			var starts = segmentStarts(itemRanges);
+			@SuppressWarnings("unchecked")
+			var segments = (ImmutableSet<String>[]) new ImmutableSet[starts.length];
+			for (int i = 0; i < starts.length; i++) {
+				var names = new ObjectOpenHashSet<String>();
+				for (var range : itemRanges) {
+					if (range.min() <= starts[i] && starts[i] <= range.max()) {
+						names.add(range.name());
+					}
+				}
+				segments[i] = share(names, shared);
+			}
+
+			var explicit = new Int2ObjectOpenHashMap<ImmutableSet<String>>();
+			var itemMetadata = metadata.get(item);
+			if (itemMetadata != null) {
+				for (var entry : itemMetadata.int2ObjectEntrySet()) {
+					var names = new ObjectOpenHashSet<String>(entry.getValue());
+					names.addAll(segment(starts, segments, entry.getIntKey()));
+					explicit.put(entry.getIntKey(), share(names, shared));
+				}
+			}
+			items.put(item, new ItemNames(explicit, starts, segments));
+		}
+		return new OreNameIndex(items);
+	}
+
+	/**
+	 * Every metadata where the set of covering ranges changes, starting at 0.
+	 */
+	private static int[] segmentStarts(ObjectArrayList<NamedRange> ranges) {
+		if (ranges == null) {
+			return new int[0];
+		}
+
+		var starts = new IntOpenHashSet();
+		starts.add(0);
+		for (var range : ranges) {
+			starts.add(range.min());
+			starts.add(range.max() + 1);
+		}
+		var sorted = starts.toIntArray();
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	private static ImmutableSet<String> segment(int[] starts, ImmutableSet<String>[] segments, int metadata) {
+		int index = Arrays.binarySearch(starts, metadata);
+		if (index < 0) {
+			index = -index - 2;
+		}
+		return index < 0 ? ImmutableSet.of() : segments[index];
+	}
+
+	private static ImmutableSet<String> share(ObjectOpenHashSet<String> names,
+			Object2ObjectOpenHashMap<ObjectOpenHashSet<String>, ImmutableSet<String>> shared) {
+		if (names.isEmpty()) {
+			return ImmutableSet.of();
+		}
+		return shared.computeIfAbsent(names, ImmutableSet::copyOf);
+	}
+
+	@Desugar
+	private record NamedRange(int min, int max, String name) {
+	}
+
+	@Desugar
+	private record ItemNames(Int2ObjectOpenHashMap<ImmutableSet<String>> metadata, int[] starts,
+			ImmutableSet<String>[] segments) {
+		ImmutableSet<String> get(int meta) {
+			var names = metadata.get(meta);
+			return names != null ? names : segment(starts, segments, meta);
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package com.gardenevery.vintagetag;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import javax.annotation.Nonnull;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import net.minecraftforge.fluids.FluidRegistry;
+import net.minecraftforge.fml.common.Loader;
+import net.minecraftforge.fml.common.registry.ForgeRegistries;
+
+/**
+ * Writes the registry names {@link TagCompiler} needs to resolve tag values
+ * without a running game, plus the mod jar load order.
+ * <p>
+ * Format, one record per line:
+ *
+ * <pre>
+ * mod &lt;modid&gt; &lt;jar file name&gt;
+ * item &lt;registry name&gt; &lt;1 if the item has subtypes, else 0&gt;
+ * block &lt;registry name&gt;
+ * fluid &lt;fluid name&gt;
+ * </pre>
+ */
+final class RegistryDump {
+	static final Path DUMP_FILE = Paths.get("config", "vintagetag", "registry.txt");
+
+	@Nonnull
+	public static Path write() throws IOException {
+		var lines = new ObjectArrayList<String>();
+		lines.add("# VintageTag registry dump, input for TagCompiler");
+		lines.addAll(modLines());
+		lines.addAll(registryLines());
+
+		Files.createDirectories(DUMP_FILE.toAbsolutePath().getParent());
+		Files.write(DUMP_FILE, lines, StandardCharsets.UTF_8);
+		return DUMP_FILE;
+	}
+
+	/**
+	 * Fingerprint of the current registries, as stored in snapshots produced by
+	 * {@link TagCompiler}.
+	 */
+	@Nonnull
+	public static byte[] fingerprint() {
+		return TagCompiler.registryFingerprint(registryLines());
+	}
+
+	@Nonnull
+	private static List<String> modLines() {
+		var lines = new ObjectArrayList<String>();
+		for (var mod : Loader.instance().getModList()) {
+			var source = mod.getSource();
+			if (source != null && source.isFile() && source.getName().endsWith(".jar")) {
+				lines.add("mod " + mod.getModId() + " " + source.getName());
+			}
+		}
+		return lines;
+	}
+
+	@Nonnull
+	private static List<String> registryLines() {
+		var items = new ObjectArrayList<String>();
+		for (var item : ForgeRegistries.ITEMS) {
+			if (item.getRegistryName() != null) {
+				items.add("item " + item.getRegistryName() + " " + (item.getHasSubtypes() ? 1 : 0));
+			}
+		}
+		items.sort(null);
+
+		var blocks = new ObjectArrayList<String>();
+		for (var block : ForgeRegistries.BLOCKS) {
+			if (block.getRegistryName() != null) {
+				blocks.add("block " + block.getRegistryName());
+			}
+		}
+		blocks.sort(null);
+
+		var fluids = new ObjectArrayList<String>();
+		for (var fluidName : FluidRegistry.getRegisteredFluids().keySet()) {
+			fluids.add("fluid " + fluidName);
+		}
+		fluids.sort(null);
+
+		var lines = new ObjectArrayList<String>(items.size() + blocks.size() + fluids.size());
+		lines.addAll(items);
+		lines.addAll(blocks);
+		lines.addAll(fluids);
+		return lines;
+	}
+}
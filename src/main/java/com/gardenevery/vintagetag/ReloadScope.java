@@ -0,0 +1,84 @@
+package com.gardenevery.vintagetag;
+
+import java.util.Objects;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.github.bsideup.jabel.Desugar;
+
+/**
+ * Selects the config tag files a partial reload reads again: all files of one
+ * tag type, all tags of one namespace, or a single file. Config files outside
+ * the scope are kept exactly as loaded last time; the ore dictionary only
+ * contributes what changed since (see {@link OreDictSync}). {@link #ALL} is a
+ * full reload, {@link #ORE_DICTIONARY} reads no tag files at all and only
+ * applies ore dictionary changes.
+ */
+@Desugar
+record ReloadScope(@Nullable TagType type, @Nullable String namespace, @Nullable String file, boolean oreOnly) {
+	public static final ReloadScope ALL = new ReloadScope(null, null, null, false);
+	public static final ReloadScope ORE_DICTIONARY = new ReloadScope(null, null, null, true);
+
+	/**
+	 * Parses a /tag reload argument: a tag type name, a tag file path relative
+	 * to config/tags, or otherwise a namespace.
+	 */
+	@Nonnull
+	public static ReloadScope parse(@Nonnull String argument) {
+		var type = TagType.getType(argument);
+		if (type != null) {
+			return new ReloadScope(type, null, null, false);
+		}
+
+		if (TagParser.isConfigTagFile(argument)) {
+			return new ReloadScope(null, null, argument.replace('\\', '/'), false);
+		}
+		return new ReloadScope(null, argument, null, false);
+	}
+
+	public boolean isAll() {
+		return type == null && namespace == null && file == null && !oreOnly;
+	}
+
+	/**
+	 * @param relativePath the file's path relative to config/tags, using '/'
+	 */
+	public boolean matches(@Nonnull TagType tagType, @Nonnull String tagName, @Nonnull String relativePath) {
+		if (oreOnly) {
+			return false;
+		}
+		if (type != null) {
+			return type == tagType;
+		}
+		if (namespace != null) {
+			return tagName.startsWith(namespace + ":");
+		}
+		if (file != null) {
+			return relativePath.equals(file) || relativePath.endsWith("/" + file);
+		}
+		return true;
+	}
+
+	/**
+	 * Combines two queued requests; different scopes fall back to a full
+	 * reload.
+	 */
+	@Nonnull
+	public ReloadScope merge(@Nonnull ReloadScope other) {
+		return Objects.equals(this, other) ? this : ALL;
+	}
+
+	@Nonnull
+	public String describe() {
+		if (oreOnly) {
+			return "ore dictionary";
+		}
+		if (type != null) {
+			return type.getName();
+		}
+		if (namespace != null) {
+			return namespace;
+		}
+		return file != null ? file : "*";
+	}
+}
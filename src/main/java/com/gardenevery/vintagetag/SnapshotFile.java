@@ -0,0 +1,277 @@
+package com.gardenevery.vintagetag;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import javax.annotation.Nonnull;
+
+import com.github.bsideup.jabel.Desugar;
+
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+
+/**
+ * Registry independent binary form of baked tags.
+ * <p>
+ * Entries are stored by registry name (and metadata for items), so a file can
+ * be written without a running game and read back against any registry that
+ * contains those names. All names are written once into a string table and
+ * referenced by index; the body is deflate compressed. Item metadata is
+ * written as the first metadata followed by the width of the range, which is 0
+ * for a single metadata. Each tag also records whether it replaces what was
+ * loaded before it, so a prebaked "replace" tag still replaces the ore tag of
+ * the same name.
+ * <p>
+ * The header holds two fingerprints: one of the registries the names were
+ * resolved against and one of the tag files the snapshot was compiled from,
+ * empty when it was not compiled from files.
+ */
+final class SnapshotFile {
+	private static final int MAGIC = 0x56544147;
+	private static final int VERSION = 4;
+
+	private final byte[] fingerprint;
+	private byte[] inputs = new byte[0];
+	private final EnumMap<TagType, Map<String, List<Entry>>> tags = new EnumMap<>(TagType.class);
+	private final EnumMap<TagType, Set<String>> replaced = new EnumMap<>(TagType.class);
+
+	public SnapshotFile(@Nonnull byte[] fingerprint) {
+		this.fingerprint = fingerprint;
+		for (var type : TagType.values()) {
+			tags.put(type, new Object2ObjectLinkedOpenHashMap<>());
+			replaced.put(type, new ObjectOpenHashSet<>());
+		}
+	}
+
+	@Nonnull
+	public byte[] getFingerprint() {
+		return fingerprint;
+	}
+
+	public boolean matches(@Nonnull byte[] expected) {
+		return Arrays.equals(fingerprint, expected);
+	}
+
+	@Nonnull
+	public byte[] getInputs() {
+		return inputs;
+	}
+
+	public void setInputs(@Nonnull byte[] inputs) {
+		this.inputs = inputs;
+	}
+
+	public boolean matchesInputs(@Nonnull byte[] expected) {
+		return Arrays.equals(inputs, expected);
+	}
+
+	@Nonnull
+	public Map<String, List<Entry>> getTags(@Nonnull TagType type) {
+		return tags.get(type);
+	}
+
+	public boolean isReplace(@Nonnull TagType type, @Nonnull String tagName) {
+		return replaced.get(type).contains(tagName);
+	}
+
+	public void add(@Nonnull TagType type, @Nonnull String tagName, @Nonnull List<Entry> entries) {
+		add(type, tagName, entries, false);
+	}
+
+	public void add(@Nonnull TagType type, @Nonnull String tagName, @Nonnull List<Entry> entries,
+			boolean replace) {
+		tags.get(type).put(tagName, entries);
+		if (replace) {
+			replaced.get(type).add(tagName);
+		} else {
+			replaced.get(type).remove(tagName);
+		}
+	}
+
+	/**
+	 * Reads only the header and returns the stored fingerprint.
+	 */
+	@Nonnull
+	public static byte[] readFingerprint(@Nonnull Path file) throws IOException {
+		return readHeader(file).getFingerprint();
+	}
+
+	/**
+	 * Reads only the header and returns the stored input fingerprint.
+	 */
+	@Nonnull
+	public static byte[] readInputs(@Nonnull Path file) throws IOException {
+		return readHeader(file).getInputs();
+	}
+
+	private static SnapshotFile readHeader(Path file) throws IOException {
+		try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			return readHeader(in);
+		}
+	}
+
+	@Nonnull
+	public static SnapshotFile read(@Nonnull Path file) throws IOException {
+		try (var raw = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			var snapshot = readHeader(raw);
+			var in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(raw)));
+
+			var strings = new String[readVarInt(in)];
+			for (int i = 0; i < strings.length; i++) {
+				strings[i] = in.readUTF();
+			}
+
+			for (var type : TagType.values()) {
+				int tagCount = readVarInt(in);
+				for (int i = 0; i < tagCount; i++) {
+					var tagName = strings[readVarInt(in)];
+					boolean replace = in.readBoolean();
+					int entryCount = readVarInt(in);
+					var entries = new ObjectArrayList<Entry>(entryCount);
+
+					for (int j = 0; j < entryCount; j++) {
+						var id = strings[readVarInt(in)];
+						int metadata = type == TagType.ITEM ? readVarInt(in) : 0;
+						int maxMetadata = type == TagType.ITEM ? metadata + readVarInt(in) : 0;
+						entries.add(new Entry(id, metadata, maxMetadata));
+					}
+					snapshot.add(type, tagName, entries, replace);
+				}
+			}
+			return snapshot;
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IOException("Corrupt snapshot file: " + file, e);
+		}
+	}
+
+	/**
+	 * Writes to a temporary file first and moves it into place, so a crash
+	 * never leaves a truncated snapshot behind.
+	 */
+	public void write(@Nonnull Path file) throws IOException {
+		var parent = file.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+
+		var strings = new Object2IntOpenHashMap<String>();
+		strings.defaultReturnValue(-1);
+		var table = new ObjectArrayList<String>();
+		for (var type : TagType.values()) {
+			for (var tag : tags.get(type).entrySet()) {
+				intern(tag.getKey(), strings, table);
+				for (var entry : tag.getValue()) {
+					intern(entry.id(), strings, table);
+				}
+			}
+		}
+
+		var temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (var raw = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+			raw.writeInt(MAGIC);
+			raw.writeByte(VERSION);
+			writeVarInt(raw, fingerprint.length);
+			raw.write(fingerprint);
+			writeVarInt(raw, inputs.length);
+			raw.write(inputs);
+
+			var deflater = new Deflater(Deflater.BEST_SPEED);
+			try (var out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(raw, deflater)))) {
+				writeVarInt(out, table.size());
+				for (var string : table) {
+					out.writeUTF(string);
+				}
+
+				for (var type : TagType.values()) {
+					var typeTags = tags.get(type);
+					writeVarInt(out, typeTags.size());
+
+					for (var tag : typeTags.entrySet()) {
+						writeVarInt(out, strings.getInt(tag.getKey()));
+						out.writeBoolean(replaced.get(type).contains(tag.getKey()));
+						writeVarInt(out, tag.getValue().size());
+
+						for (var entry : tag.getValue()) {
+							writeVarInt(out, strings.getInt(entry.id()));
+							if (type == TagType.ITEM) {
+								writeVarInt(out, entry.metadata());
+								writeVarInt(out, entry.maxMetadata() - entry.metadata());
+							}
+						}
+					}
+				}
+			} finally {
+				deflater.end();
+			}
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private static SnapshotFile readHeader(DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a tag snapshot file");
+		}
+
+		int version = in.readUnsignedByte();
+		if (version != VERSION) {
+			throw new IOException("Unsupported tag snapshot version: " + version);
+		}
+
+		var fingerprint = new byte[readVarInt(in)];
+		in.readFully(fingerprint);
+		var snapshot = new SnapshotFile(fingerprint);
+		var inputs = new byte[readVarInt(in)];
+		in.readFully(inputs);
+		snapshot.setInputs(inputs);
+		return snapshot;
+	}
+
+	private static void intern(String string, Object2IntOpenHashMap<String> strings, List<String> table) {
+		if (strings.getInt(string) < 0) {
+			strings.put(string, table.size());
+			table.add(string);
+		}
+	}
+
+	static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	static int readVarInt(DataInputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("VarInt too long");
+	}
+
+	@Desugar
+	record Entry(String id, int metadata, int maxMetadata) {
+		Entry(String id, int metadata) {
+			this(id, metadata, metadata);
+		}
+	}
+}
@@ -1,36 +1,160 @@
 package com.gardenevery.vintagetag;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 
+import com.gardenevery.vintagetag.TagEntry.ItemEntry.ItemKey;
+import com.gardenevery.vintagetag.TagEntry.ItemEntry.ItemRange;
+import com.github.bsideup.jabel.Desugar;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 
+/**
+ * An immutable snapshot of one tag type.
+ * <p>
+ * Range entries (see {@link TagEntry#isRange()}) are stored as they are. A
+ * key's tags are its own plus those of every range covering it. When the
+ * snapshot is built, the ranges of each owner (only items have ranges) are
+ * cut into segments of metadata that are covered by the same ranges, each
+ * with the merged tags of those ranges, found by binary search like in
+ * {@link OreNameIndex}. A key that has no tags of its own, e.g. any metadata
+ * of a wildcard, is answered with its segment's set without allocating; only
+ * keys with tags of their own have their merged set memoized, so the memo
+ * never outgrows the snapshot.
+ */
 final class Tag<T extends TagEntry> {
 	private final ImmutableMap<String, ImmutableSet<T>> tagToEntries;
 	private final ImmutableMap<T, ImmutableSet<String>> entryToTags;
+	@Nullable
+	private final LazyIndex<T> lazy;
+	private final ImmutableMap<Object, Segments> segments;
+	private final ConcurrentHashMap<T, ImmutableSet<String>> mergedTags = new ConcurrentHashMap<>();
 
 	public Tag() {
 		this.tagToEntries = ImmutableMap.of();
 		this.entryToTags = ImmutableMap.of();
+		this.lazy = null;
+		this.segments = ImmutableMap.of();
 	}
 
 	private Tag(ImmutableMap<String, ImmutableSet<T>> tagToEntries, ImmutableMap<T, ImmutableSet<String>> entryToTags) {
 		this.tagToEntries = tagToEntries;
 		this.entryToTags = entryToTags;
+		this.lazy = null;
+		try (var ignored = TagProfiler.section("segments")) {
+			this.segments = indexSegments(entryToTags.keySet());
+		}
+	}
+
+	private Tag(LazyIndex<T> lazy) {
+		this.tagToEntries = ImmutableMap.of();
+		this.entryToTags = ImmutableMap.of();
+		this.lazy = lazy;
+		this.segments = indexSegments(lazy.directTags.keySet());
+	}
+
+	private ImmutableMap<Object, Segments> indexSegments(Set<T> entries) {
+		var byOwner = new Object2ObjectOpenHashMap<Object, ObjectArrayList<ItemRange>>();
+		for (T entry : entries) {
+			if (entry instanceof ItemRange range) {
+				byOwner.computeIfAbsent(range.getOwner(), k -> new ObjectArrayList<>()).add(range);
+			}
+		}
+
+		var shared = new Object2ObjectOpenHashMap<ObjectOpenHashSet<String>, ImmutableSet<String>>();
+		var builder = ImmutableMap.<Object, Segments>builder();
+		for (var owner : byOwner.entrySet()) {
+			var ranges = owner.getValue();
+			var starts = new IntOpenHashSet();
+			starts.add(0);
+			for (var range : ranges) {
+				starts.add(range.min());
+				starts.add(range.max() + 1);
+			}
+			var sorted = starts.toIntArray();
+			Arrays.sort(sorted);
+
+			@SuppressWarnings("unchecked")
+			var tags = (ImmutableSet<String>[]) new ImmutableSet[sorted.length];
+			for (int i = 0; i < sorted.length; i++) {
+				var names = new ObjectOpenHashSet<String>();
+				for (var range : ranges) {
+					if (range.min() <= sorted[i] && sorted[i] <= range.max()) {
+						@SuppressWarnings("unchecked")
+						T rangeEntry = (T) range;
+						names.addAll(getOwnTags(rangeEntry));
+					}
+				}
+				tags[i] = names.isEmpty() ? ImmutableSet.of() : shared.computeIfAbsent(names, ImmutableSet::copyOf);
+			}
+			builder.put(owner.getKey(), new Segments(sorted, tags));
+		}
+		return builder.build();
 	}
 
 	@Nonnull
 	public ImmutableSet<String> getTags(@Nonnull T entry) {
+		var tags = getOwnTags(entry);
+		var rangeTags = getRangeTags(entry);
+		if (rangeTags.isEmpty()) {
+			return tags;
+		}
+		if (tags.isEmpty()) {
+			return rangeTags;
+		}
+
+		var cached = mergedTags.get(entry);
+		if (cached != null) {
+			return cached;
+		}
+
+		var result = new ObjectOpenHashSet<String>(tags);
+		result.addAll(rangeTags);
+		var computed = result.size() == tags.size() ? tags : ImmutableSet.copyOf(result);
+		var existing = mergedTags.putIfAbsent(entry, computed);
+		return existing != null ? existing : computed;
+	}
+
+	/**
+	 * The tags of the ranges covering a key, from the precomputed segments of
+	 * its owner.
+	 */
+	private ImmutableSet<String> getRangeTags(T entry) {
+		if (segments.isEmpty() || !(entry instanceof ItemKey key)) {
+			return ImmutableSet.of();
+		}
+
+		var ownerSegments = segments.get(key.item());
+		return ownerSegments != null ? ownerSegments.get(key.metadata()) : ImmutableSet.of();
+	}
+
+	private ImmutableSet<String> getOwnTags(T entry) {
+		if (lazy != null) {
+			return lazy.getTags(entry);
+		}
 		return entryToTags.getOrDefault(entry, ImmutableSet.of());
 	}
 
 	@Nonnull
 	public ImmutableSet<T> getKeys(@Nonnull String tagName) {
+		if (lazy != null) {
+			return lazy.getKeys(tagName);
+		}
 		return tagToEntries.getOrDefault(tagName, ImmutableSet.of());
 	}
 
@@ -46,6 +170,9 @@ final class Tag<T extends TagEntry> {
 
 	@Nonnull
 	public ImmutableSet<String> getAllTags() {
+		if (lazy != null) {
+			return lazy.definitions.keySet();
+		}
 		return tagToEntries.keySet();
 	}
 
@@ -56,6 +183,9 @@ final class Tag<T extends TagEntry> {
 
 	@Nonnull
 	public ImmutableSet<T> getAllKeys() {
+		if (lazy != null) {
+			return lazy.directTags.keySet();
+		}
 		return entryToTags.keySet();
 	}
 
@@ -64,13 +194,19 @@ final class Tag<T extends TagEntry> {
 		return getAllKeys().asList();
 	}
 
+	/**
+	 * In lazy mode this expands every tag on first call.
+	 */
 	@Nonnull
 	public ImmutableMap<String, ImmutableSet<T>> getAllEntries() {
+		if (lazy != null) {
+			return lazy.getAllEntries();
+		}
 		return tagToEntries;
 	}
 
 	public boolean hasTag(@Nonnull T entry, @Nonnull String tagName) {
-		return getTags(entry).contains(tagName);
+		return getOwnTags(entry).contains(tagName) || getRangeTags(entry).contains(tagName);
 	}
 
 	public boolean hasAnyTag(@Nonnull T entry, @Nonnull String... tagNames) {
@@ -98,17 +234,51 @@ final class Tag<T extends TagEntry> {
 	}
 
 	public boolean exists(@Nonnull String tagName) {
+		if (lazy != null) {
+			return lazy.definitions.containsKey(tagName);
+		}
 		return tagToEntries.containsKey(tagName);
 	}
 
 	public int getTagCount() {
+		if (lazy != null) {
+			return lazy.definitions.size();
+		}
 		return tagToEntries.size();
 	}
 
 	public int getKeyCount() {
+		if (lazy != null) {
+			return lazy.directTags.size();
+		}
 		return entryToTags.size();
 	}
 
+	/**
+	 * Called once this snapshot has been replaced, stops any background work
+	 * still running for it.
+	 */
+	public void retire() {
+		if (lazy != null) {
+			lazy.retired = true;
+		}
+	}
+
+	/**
+	 * The ranges of one owner cut at every metadata where the set of covering
+	 * ranges changes, starting at 0, with the tags of each piece.
+	 */
+	@Desugar
+	private record Segments(int[] starts, ImmutableSet<String>[] tags) {
+		ImmutableSet<String> get(int metadata) {
+			int index = Arrays.binarySearch(starts, metadata);
+			if (index < 0) {
+				index = -index - 2;
+			}
+			return index < 0 ? ImmutableSet.of() : tags[index];
+		}
+	}
+
 	static final class MutableTagContainer<T extends TagEntry> {
 		private final Object2ObjectOpenHashMap<String, ObjectOpenHashSet<T>> tagToEntries;
 		private final Object2ObjectOpenHashMap<T, ObjectOpenHashSet<String>> entryToTags;
@@ -153,10 +323,82 @@ final class Tag<T extends TagEntry> {
 			register(entries, tagName);
 		}
 
+		/**
+		 * Builds the snapshot. Exclusions are applied to the expanded tags, so a
+		 * container that has any is always expanded eagerly.
+		 */
 		@Nonnull
 		public Tag<T> build() {
+			if (TagConfig.lazyExpansion) {
+				if (!hasExclusions()) {
+					return buildLazy();
+				}
+				TagLog.info("Tag exclusions are in use, expanding tags eagerly despite lazyExpansion");
+			}
+
+			ImmutableMap<String, ImmutableSet<T>> expandedTagToEntries;
+			try (var ignored = TagProfiler.section("expand")) {
+				expandedTagToEntries = expandAll();
+			}
+
+			ImmutableMap<T, ImmutableSet<String>> expandedEntryToTags;
+			try (var ignored = TagProfiler.section("invert")) {
+				expandedEntryToTags = invert(expandedTagToEntries);
+			}
+
+			return new Tag<>(expandedTagToEntries, expandedEntryToTags);
+		}
+
+		/**
+		 * Keeps the raw definitions and the reference graph; tags are expanded on
+		 * first query.
+		 */
+		@Nonnull
+		private Tag<T> buildLazy() {
+			try (var ignored = TagProfiler.section("index")) {
+				var definitions = ImmutableMap.<String, ImmutableSet<T>>builder();
+				var includedBy = new Object2ObjectOpenHashMap<String, ObjectOpenHashSet<String>>();
+
+				for (var entry : tagToEntries.entrySet()) {
+					var tagName = entry.getKey();
+					definitions.put(tagName, ImmutableSet.copyOf(entry.getValue()));
+
+					for (T value : entry.getValue()) {
+						if (value.isTag()) {
+							includedBy.computeIfAbsent(value.getTagName(), k -> new ObjectOpenHashSet<>()).add(tagName);
+						}
+					}
+				}
+
+				var directTags = ImmutableMap.<T, ImmutableSet<String>>builder();
+				for (var entry : entryToTags.entrySet()) {
+					if (entry.getKey().isKey() || entry.getKey().isRange()) {
+						directTags.put(entry.getKey(), ImmutableSet.copyOf(entry.getValue()));
+					}
+				}
+
+				var includedByBuilder = ImmutableMap.<String, ImmutableSet<String>>builder();
+				for (var entry : includedBy.entrySet()) {
+					includedByBuilder.put(entry.getKey(), ImmutableSet.copyOf(entry.getValue()));
+				}
+
+				var index = new LazyIndex<>(definitions.build(), directTags.build(), includedByBuilder.build());
+				index.startBackgroundInversion();
+				return new Tag<>(index);
+			}
+		}
+
+		private boolean hasExclusions() {
+			for (var entry : entryToTags.keySet()) {
+				if (entry.isExclusion()) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		private ImmutableMap<String, ImmutableSet<T>> expandAll() {
 			var expandedCache = new Object2ObjectOpenHashMap<String, ImmutableSet<T>>();
-			var tempExpandedEntryToTags = new Object2ObjectOpenHashMap<T, ObjectOpenHashSet<String>>();
 			var processingSet = new ObjectOpenHashSet<String>();
 
 			var expandedTagToEntriesBuilder = ImmutableMap.<String, ImmutableSet<T>>builder();
@@ -165,8 +407,18 @@ final class Tag<T extends TagEntry> {
 				ImmutableSet<T> expandedKeys = expandTag(tagName, processingSet, expandedCache);
 				processingSet.clear();
 				expandedTagToEntriesBuilder.put(tagName, expandedKeys);
+			}
+
+			return expandedTagToEntriesBuilder.build();
+		}
+
+		private static <T extends TagEntry> ImmutableMap<T, ImmutableSet<String>> invert(
+				ImmutableMap<String, ImmutableSet<T>> expandedTagToEntries) {
+			var tempExpandedEntryToTags = new Object2ObjectOpenHashMap<T, ObjectOpenHashSet<String>>();
 
-				for (T key : expandedKeys) {
+			for (var entry : expandedTagToEntries.entrySet()) {
+				var tagName = entry.getKey();
+				for (T key : entry.getValue()) {
 					if (!key.isTag()) {
 						tempExpandedEntryToTags.computeIfAbsent(key, k -> new ObjectOpenHashSet<>()).add(tagName);
 					}
@@ -178,7 +430,7 @@ final class Tag<T extends TagEntry> {
 				expandedEntryToTagsBuilder.put(entry.getKey(), ImmutableSet.copyOf(entry.getValue()));
 			}
 
-			return new Tag<>(expandedTagToEntriesBuilder.build(), expandedEntryToTagsBuilder.build());
+			return expandedEntryToTagsBuilder.build();
 		}
 
 		private ImmutableSet<T> expandTag(String tagName, Set<String> processing,
@@ -194,6 +446,7 @@ final class Tag<T extends TagEntry> {
 
 			try {
 				var result = new ObjectOpenHashSet<T>();
+				ObjectArrayList<T> excluded = null;
 				var entries = tagToEntries.get(tagName);
 				if (entries != null) {
 					for (T entry : entries) {
@@ -201,13 +454,29 @@ final class Tag<T extends TagEntry> {
 							continue;
 						}
 
-						if (entry.isTag()) {
+						if (entry.isExclusion()) {
+							if (excluded == null) {
+								excluded = new ObjectArrayList<>();
+							}
+
+							@SuppressWarnings("unchecked")
+							T target = (T) ((TagEntry.Exclusion) entry).entry();
+							if (target.isTag()) {
+								excluded.addAll(expandTag(target.getTagName(), processing, cache));
+							} else {
+								excluded.add(target);
+							}
+						} else if (entry.isTag()) {
 							result.addAll(expandTag(entry.getTagName(), processing, cache));
 						} else {
 							result.add(entry);
 						}
 					}
 				}
+
+				if (excluded != null) {
+					exclude(result, excluded);
+				}
 				var expanded = ImmutableSet.copyOf(result);
 				cache.put(tagName, expanded);
 				return expanded;
@@ -216,9 +485,191 @@ final class Tag<T extends TagEntry> {
 			}
 		}
 
+		/**
+		 * Removes the excluded entries from an expanded tag: a plain set
+		 * difference, plus cutting ranges around excluded keys and ranges of
+		 * the same owner.
+		 */
+		@SuppressWarnings("unchecked")
+		static <T extends TagEntry> void exclude(Set<T> result, List<T> excluded) {
+			var byOwner = new Object2ObjectOpenHashMap<Object, ObjectArrayList<T>>();
+			for (T entry : excluded) {
+				result.remove(entry);
+				var owner = entry.getOwner();
+				if (owner != null) {
+					byOwner.computeIfAbsent(owner, k -> new ObjectArrayList<>()).add(entry);
+				}
+			}
+
+			if (byOwner.isEmpty()) {
+				return;
+			}
+
+			var pieces = new ObjectArrayList<T>();
+			var iterator = result.iterator();
+			while (iterator.hasNext()) {
+				T entry = iterator.next();
+				var owner = entry.getOwner();
+				var candidates = owner != null ? byOwner.get(owner) : null;
+				if (candidates == null) {
+					continue;
+				}
+
+				List<TagEntry> remaining = Collections.singletonList(entry);
+				for (T exclusion : candidates) {
+					var next = new ObjectArrayList<TagEntry>(remaining.size() + 1);
+					for (var piece : remaining) {
+						next.addAll(piece.without(exclusion));
+					}
+					remaining = next;
+				}
+
+				if (remaining.size() != 1 || remaining.get(0) != entry) {
+					iterator.remove();
+					for (var piece : remaining) {
+						pieces.add((T) piece);
+					}
+				}
+			}
+			result.addAll(pieces);
+		}
+
 		public void clear() {
 			tagToEntries.clear();
 			entryToTags.clear();
 		}
 	}
+
+	/**
+	 * Lazy snapshot state. Expanded tags and entry-to-tags lookups are memoized
+	 * in concurrent maps; concurrent first queries may compute the same value
+	 * twice, and the first one stored wins. The entry-to-tags index is filled in
+	 * on a background thread so that later queries are plain lookups.
+	 */
+	private static final class LazyIndex<T extends TagEntry> {
+		private static final ExecutorService BACKGROUND = Executors.newSingleThreadExecutor(
+				new ThreadFactoryBuilder().setNameFormat("VintageTag Index").setDaemon(true).build());
+
+		private final ImmutableMap<String, ImmutableSet<T>> definitions;
+		private final ImmutableMap<T, ImmutableSet<String>> directTags;
+		private final ImmutableMap<String, ImmutableSet<String>> includedBy;
+
+		private final ConcurrentHashMap<String, ImmutableSet<T>> expanded = new ConcurrentHashMap<>();
+		private final ConcurrentHashMap<T, ImmutableSet<String>> entryTags = new ConcurrentHashMap<>();
+		@Nullable
+		private volatile ImmutableMap<String, ImmutableSet<T>> allEntries;
+		private volatile boolean retired = false;
+
+		private LazyIndex(ImmutableMap<String, ImmutableSet<T>> definitions,
+				ImmutableMap<T, ImmutableSet<String>> directTags, ImmutableMap<String, ImmutableSet<String>> includedBy) {
+			this.definitions = definitions;
+			this.directTags = directTags;
+			this.includedBy = includedBy;
+		}
+
+		private void startBackgroundInversion() {
+			BACKGROUND.execute(() -> {
+				for (var entry : directTags.keySet()) {
+					if (retired) {
+						return;
+					}
+					getTags(entry);
+				}
+			});
+		}
+
+		@Nonnull
+		private ImmutableSet<T> getKeys(String tagName) {
+			var cached = expanded.get(tagName);
+			if (cached != null) {
+				return cached;
+			}
+
+			if (!definitions.containsKey(tagName)) {
+				return ImmutableSet.of();
+			}
+			return expand(tagName, new ObjectOpenHashSet<>());
+		}
+
+		private ImmutableSet<T> expand(String tagName, Set<String> processing) {
+			var cached = expanded.get(tagName);
+			if (cached != null) {
+				return cached;
+			}
+
+			if (!processing.add(tagName)) {
+				return ImmutableSet.of();
+			}
+
+			try {
+				var result = new ObjectOpenHashSet<T>();
+				var entries = definitions.get(tagName);
+				if (entries != null) {
+					for (T entry : entries) {
+						if (entry.isEmpty()) {
+							continue;
+						}
+
+						if (entry.isTag()) {
+							result.addAll(expand(entry.getTagName(), processing));
+						} else {
+							result.add(entry);
+						}
+					}
+				}
+
+				var computed = ImmutableSet.copyOf(result);
+				var existing = expanded.putIfAbsent(tagName, computed);
+				return existing != null ? existing : computed;
+			} finally {
+				processing.remove(tagName);
+			}
+		}
+
+		@Nonnull
+		private ImmutableSet<String> getTags(T entry) {
+			var cached = entryTags.get(entry);
+			if (cached != null) {
+				return cached;
+			}
+
+			var direct = directTags.get(entry);
+			if (direct == null) {
+				return ImmutableSet.of();
+			}
+
+			var result = new ObjectOpenHashSet<String>(direct);
+			var queue = new ArrayDeque<String>(direct);
+			while (!queue.isEmpty()) {
+				var parents = includedBy.get(queue.poll());
+				if (parents == null) {
+					continue;
+				}
+
+				for (var parent : parents) {
+					if (result.add(parent)) {
+						queue.add(parent);
+					}
+				}
+			}
+
+			var computed = ImmutableSet.copyOf(result);
+			var existing = entryTags.putIfAbsent(entry, computed);
+			return existing != null ? existing : computed;
+		}
+
+		@Nonnull
+		private ImmutableMap<String, ImmutableSet<T>> getAllEntries() {
+			var all = allEntries;
+			if (all == null) {
+				var builder = ImmutableMap.<String, ImmutableSet<T>>builder();
+				for (var tagName : definitions.keySet()) {
+					builder.put(tagName, getKeys(tagName));
+				}
+				all = builder.build();
+				allEntries = all;
+			}
+			return all;
+		}
+	}
 }
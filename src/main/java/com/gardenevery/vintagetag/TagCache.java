@@ -0,0 +1,282 @@
+package com.gardenevery.vintagetag;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.gardenevery.vintagetag.Tag.MutableTagContainer;
+import com.gardenevery.vintagetag.TagEntry.BlockEntry;
+import com.gardenevery.vintagetag.TagEntry.BlockEntry.BlockKey;
+import com.gardenevery.vintagetag.TagEntry.FluidEntry;
+import com.gardenevery.vintagetag.TagEntry.FluidEntry.FluidKey;
+import com.gardenevery.vintagetag.TagEntry.ItemEntry;
+import com.gardenevery.vintagetag.TagEntry.ItemEntry.ItemKey;
+import com.gardenevery.vintagetag.TagEntry.ItemEntry.ItemRange;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+
+import net.minecraft.block.Block;
+import net.minecraft.item.Item;
+import net.minecraftforge.fluids.FluidRegistry;
+import net.minecraftforge.fml.common.Loader;
+import net.minecraftforge.fml.common.registry.ForgeRegistries;
+import net.minecraftforge.oredict.OreDictionary;
+
+/**
+ * Persists baked snapshots between game starts.
+ * <p>
+ * The snapshot is stored together with a fingerprint of every input of the
+ * load pipeline: the mod jars (path, size and modification time), the content
+ * of config/tags and of a prebaked snapshot, the ore dictionary without what
+ * {@link OreDictExport} registered, and the item, block and fluid registries.
+ * On startup the fingerprint is recomputed; if it matches the stored one, the
+ * snapshot is read back directly and ore sync, scanning and parsing are
+ * skipped.
+ */
+final class TagCache {
+	private static final Path CACHE_FILE = Paths.get("config", "vintagetag", "snapshot.bin");
+
+	@Nonnull
+	public static byte[] fingerprint() {
+		try (var ignored = TagProfiler.section("fingerprint")) {
+			Hasher hasher = Hashing.murmur3_128().newHasher();
+			hasher.putString(Tags.VERSION, StandardCharsets.UTF_8);
+			hasher.putBoolean(TagConfig.enableOreSync);
+			hasher.putBoolean(TagConfig.enableModScanner);
+			hasher.putBoolean(TagConfig.enableConfigScanner);
+
+			if (TagConfig.enableModScanner) {
+				hashModJars(hasher);
+			}
+
+			if (TagConfig.enableConfigScanner) {
+				hashConfigTags(hasher);
+			}
+
+			if (TagConfig.enableOreSync) {
+				hashOreDictionary(hasher);
+			}
+
+			hashPrebaked(hasher);
+
+			hashRegistries(hasher);
+			return hasher.hash().asBytes();
+		}
+	}
+
+	/**
+	 * Returns the cached snapshot if its fingerprint matches, otherwise null.
+	 */
+	@Nullable
+	public static TagManager.Snapshot load(@Nonnull byte[] fingerprint) {
+		if (!Files.isRegularFile(CACHE_FILE)) {
+			return null;
+		}
+
+		try (var ignored = TagProfiler.section("cache read")) {
+			if (!Arrays.equals(SnapshotFile.readFingerprint(CACHE_FILE), fingerprint)) {
+				return null;
+			}
+
+			var snapshot = fromFile(SnapshotFile.read(CACHE_FILE));
+			TagResolver.finish();
+			TagLog.info("Loaded baked tags from {}", CACHE_FILE);
+			return snapshot;
+		} catch (IOException e) {
+			TagLog.info("Failed to read tag snapshot cache: {}", CACHE_FILE, e);
+			return null;
+		}
+	}
+
+	public static void save(@Nonnull byte[] fingerprint, @Nonnull TagManager.Snapshot snapshot) {
+		try {
+			toFile(fingerprint, snapshot).write(CACHE_FILE);
+		} catch (IOException e) {
+			TagLog.info("Failed to write tag snapshot cache: {}", CACHE_FILE, e);
+		}
+	}
+
+	@Nonnull
+	static TagManager.Snapshot fromFile(@Nonnull SnapshotFile file) {
+		var itemContainer = new MutableTagContainer<ItemEntry>();
+		var fluidContainer = new MutableTagContainer<FluidEntry>();
+		var blockContainer = new MutableTagContainer<BlockEntry>();
+
+		register(file, itemContainer::register, fluidContainer::register, blockContainer::register);
+		return new TagManager.Snapshot(itemContainer.build(), fluidContainer.build(), blockContainer.build());
+	}
+
+	/**
+	 * Resolves the names stored in a snapshot file against the registries and
+	 * hands the entries of each tag to the given registration functions.
+	 */
+	static void register(@Nonnull SnapshotFile file, @Nonnull BiConsumer<Set<ItemEntry>, String> items,
+			@Nonnull BiConsumer<Set<FluidEntry>, String> fluids, @Nonnull BiConsumer<Set<BlockEntry>, String> blocks) {
+		for (var tag : file.getTags(TagType.ITEM).entrySet()) {
+			var entries = new ObjectOpenHashSet<ItemEntry>(tag.getValue().size());
+			for (var entry : tag.getValue()) {
+				entries.add(TagResolver.item(entry.id(), entry.metadata(), entry.maxMetadata()));
+			}
+			items.accept(entries, tag.getKey());
+		}
+
+		for (var tag : file.getTags(TagType.FLUID).entrySet()) {
+			var entries = new ObjectOpenHashSet<FluidEntry>(tag.getValue().size());
+			for (var entry : tag.getValue()) {
+				entries.add(TagResolver.fluid(entry.id()));
+			}
+			fluids.accept(entries, tag.getKey());
+		}
+
+		for (var tag : file.getTags(TagType.BLOCK).entrySet()) {
+			var entries = new ObjectOpenHashSet<BlockEntry>(tag.getValue().size());
+			for (var entry : tag.getValue()) {
+				entries.add(TagResolver.block(entry.id()));
+			}
+			blocks.accept(entries, tag.getKey());
+		}
+	}
+
+	@Nonnull
+	static SnapshotFile toFile(@Nonnull byte[] fingerprint, @Nonnull TagManager.Snapshot snapshot) {
+		var file = new SnapshotFile(fingerprint);
+
+		for (var tag : snapshot.item().getAllEntries().entrySet()) {
+			var entries = new ObjectArrayList<SnapshotFile.Entry>(tag.getValue().size());
+			for (var entry : tag.getValue()) {
+				if (entry instanceof ItemKey key && key.item().getRegistryName() != null) {
+					entries.add(new SnapshotFile.Entry(key.item().getRegistryName().toString(), key.metadata()));
+				} else if (entry instanceof ItemRange range && range.item().getRegistryName() != null) {
+					entries.add(new SnapshotFile.Entry(range.item().getRegistryName().toString(), range.min(),
+							range.max()));
+				}
+			}
+			file.add(TagType.ITEM, tag.getKey(), entries);
+		}
+
+		for (var tag : snapshot.fluid().getAllEntries().entrySet()) {
+			var entries = new ObjectArrayList<SnapshotFile.Entry>(tag.getValue().size());
+			for (var entry : tag.getValue()) {
+				if (entry instanceof FluidKey key) {
+					var fluidName = FluidRegistry.getFluidName(key.fluid());
+					if (fluidName != null) {
+						entries.add(new SnapshotFile.Entry(fluidName, 0));
+					}
+				}
+			}
+			file.add(TagType.FLUID, tag.getKey(), entries);
+		}
+
+		for (var tag : snapshot.block().getAllEntries().entrySet()) {
+			var entries = new ObjectArrayList<SnapshotFile.Entry>(tag.getValue().size());
+			for (var entry : tag.getValue()) {
+				if (entry instanceof BlockKey key && key.block().getRegistryName() != null) {
+					entries.add(new SnapshotFile.Entry(key.block().getRegistryName().toString(), 0));
+				}
+			}
+			file.add(TagType.BLOCK, tag.getKey(), entries);
+		}
+
+		return file;
+	}
+
+	private static void hashModJars(Hasher hasher) {
+		for (var mod : Loader.instance().getModList()) {
+			var source = mod.getSource();
+			if (source == null || !source.isFile()) {
+				continue;
+			}
+
+			hasher.putString(source.getAbsolutePath(), StandardCharsets.UTF_8);
+			hasher.putLong(source.length());
+			hasher.putLong(source.lastModified());
+		}
+	}
+
+	private static void hashConfigTags(Hasher hasher) {
+		var root = Paths.get("config", "tags");
+		if (!Files.isDirectory(root)) {
+			return;
+		}
+
+		try (var paths = Files.walk(root)) {
+			List<Path> files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+			for (var file : files) {
+				hasher.putString(root.relativize(file).toString(), StandardCharsets.UTF_8);
+				hasher.putBytes(Files.readAllBytes(file));
+			}
+		} catch (IOException e) {
+			// An unreadable directory can never match a stored fingerprint.
+			hasher.putLong(System.nanoTime());
+		}
+	}
+
+	private static void hashPrebaked(Hasher hasher) {
+		if (!Files.isRegularFile(TagLoader.PREBAKED_FILE)) {
+			return;
+		}
+
+		try {
+			hasher.putBytes(Files.readAllBytes(TagLoader.PREBAKED_FILE));
+		} catch (IOException e) {
+			hasher.putLong(System.nanoTime());
+		}
+	}
+
+	/**
+	 * Hashes the ore dictionary as it was before the export: exported entries
+	 * are skipped, and so are ore names left without any other entry, which
+	 * the export may have created.
+	 */
+	private static void hashOreDictionary(Hasher hasher) {
+		for (var oreName : OreDictionary.getOreNames()) {
+			if (oreName == null) {
+				continue;
+			}
+
+			boolean named = false;
+			for (var stack : OreDictionary.getOres(oreName, false)) {
+				if (stack == null || stack.isEmpty() || stack.getItem().getRegistryName() == null
+						|| OreDictExport.isExported(oreName, stack)) {
+					continue;
+				}
+				if (!named) {
+					hasher.putString(oreName, StandardCharsets.UTF_8);
+					named = true;
+				}
+				hasher.putString(stack.getItem().getRegistryName().toString(), StandardCharsets.UTF_8);
+				hasher.putInt(stack.getMetadata());
+			}
+		}
+	}
+
+	private static void hashRegistries(Hasher hasher) {
+		for (var entry : ForgeRegistries.ITEMS.getEntries()) {
+			hasher.putString(entry.getKey().toString(), StandardCharsets.UTF_8);
+			hasher.putInt(Item.getIdFromItem(entry.getValue()));
+		}
+
+		for (var entry : ForgeRegistries.BLOCKS.getEntries()) {
+			hasher.putString(entry.getKey().toString(), StandardCharsets.UTF_8);
+			hasher.putInt(Block.getIdFromBlock(entry.getValue()));
+		}
+
+		var fluidNames = new ObjectArrayList<>(FluidRegistry.getRegisteredFluids().keySet());
+		fluidNames.sort(null);
+		for (var fluidName : fluidNames) {
+			hasher.putString(fluidName, StandardCharsets.UTF_8);
+		}
+	}
+}
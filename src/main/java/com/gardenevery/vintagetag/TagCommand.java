@@ -1,5 +1,6 @@
 package com.gardenevery.vintagetag;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -24,6 +25,8 @@ public class TagCommand extends CommandBase {
 	public TagCommand() {
 		registry.register("info", 1, this::executeInfo);
 		registry.register("reload", 2, this::executeReload);
+		registry.register("profile", 2, this::executeProfile);
+		registry.register("dump", 2, this::executeDump);
 	}
 
 	@Nonnull
@@ -87,28 +90,47 @@ public class TagCommand extends CommandBase {
 	}
 
 	public void executeReload(MinecraftServer server, ICommandSender sender, String[] args) {
-		long startTime = System.currentTimeMillis();
-
-		if (TagConfig.enableOreSync) {
-			OreDictSync.sync();
+		var scope = args.length > 0 ? ReloadScope.parse(args[0]) : ReloadScope.ALL;
+		if (TagConfig.asyncReload) {
+			TagReloader.reloadAsync(server, sender, scope);
+		} else {
+			TagReloader.reload(server, sender, scope);
 		}
+	}
 
-		if (TagConfig.enableModScanner) {
-			TagLoader.scanModTags();
+	public void executeProfile(MinecraftServer server, ICommandSender sender, String[] args) {
+		var report = TagProfiler.getLastReport();
+		if (report == null) {
+			sender.sendMessage(new TextComponentTranslation("tag.command.profile.empty"));
+			return;
 		}
 
-		if (TagConfig.enableConfigScanner) {
-			TagLoader.scanConfigTags();
-		}
+		sender.sendMessage(
+				new TextComponentTranslation("tag.command.profile.title", TagProfiler.formatMillis(report.totalMillis())));
 
-		TagManager.bake();
-		NetworkSync.sync(null);
+		for (var phase : report.phases()) {
+			sender.sendMessage(new TextComponentTranslation("tag.command.profile.phase",
+					TagProfiler.indent(phase.depth()) + phase.name(), TagProfiler.formatMillis(phase.millis()),
+					TagProfiler.formatBytes(phase.bytes())));
+		}
 
-		long endTime = System.currentTimeMillis();
-		long duration = endTime - startTime;
+		if (!report.listeners().isEmpty()) {
+			sender.sendMessage(new TextComponentTranslation("tag.command.profile.listeners"));
+			for (var listener : report.listeners()) {
+				sender.sendMessage(new TextComponentTranslation("tag.command.profile.listener", listener.name(),
+						TagProfiler.formatMillis(listener.millis())));
+			}
+		}
+	}
 
-		sender.sendMessage(
-				new TextComponentTranslation("tag.command.reload.success.time", duration, duration / 1000.0));
+	public void executeDump(MinecraftServer server, ICommandSender sender, String[] args) {
+		try {
+			var file = RegistryDump.write();
+			sender.sendMessage(new TextComponentTranslation("tag.command.dump.success", file.toString()));
+		} catch (IOException e) {
+			TagLog.info("Failed to write registry dump", e);
+			sender.sendMessage(new TextComponentTranslation("tag.command.dump.failed"));
+		}
 	}
 
 	public boolean hasPermission(ICommandSender sender, int level) {
@@ -147,6 +169,10 @@ public class TagCommand extends CommandBase {
 				return getListOfStringsMatchingLastWord(args, commandNames);
 			}
 
+			if (args.length == 2 && args[0].equalsIgnoreCase("reload")) {
+				return getListOfStringsMatchingLastWord(args, "item", "fluid", "block");
+			}
+
 			return Collections.emptyList();
 		}
 
@@ -0,0 +1,700 @@
+package com.gardenevery.vintagetag;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.gardenevery.vintagetag.TagParser.RawEntry;
+import com.gardenevery.vintagetag.TagParser.TagDefinition;
+
+import it.unimi.dsi.fastutil.objects.Object2BooleanOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+
+/**
+ * Offline tag compiler.
+ * <p>
+ * Reads the tag files of mod jars and config/tags exactly like
+ * {@link TagLoader}, resolves their values against a registry dump written by
+ * {@code /tag dump}, checks tag references and writes a prebaked snapshot
+ * plus a validation report. Copy the snapshot to
+ * config/vintagetag/prebaked.bin and the mod loads it instead of scanning.
+ * <p>
+ * The snapshot holds each tag's values as the files leave them after add and
+ * replace, with IDs resolved and patterns expanded. Tag references and
+ * exclusions stay in it: ore dictionary and runtime tags only exist at load
+ * time, where they are expanded exactly like scanned files.
+ * <p>
+ * Does not touch any Minecraft class; only Gson and fastutil need to be on the
+ * classpath:
+ *
+ * <pre>
+ * java -cp vintagetag.jar:gson.jar:fastutil.jar com.gardenevery.vintagetag.TagCompiler \
+ *     --registry config/vintagetag/registry.txt --mods mods --config config/tags \
+ *     --out prebaked.bin --report prebaked-report.txt
+ * </pre>
+ */
+public final class TagCompiler {
+	private final Object2BooleanOpenHashMap<String> items = new Object2BooleanOpenHashMap<>();
+	private final Set<String> blocks = new ObjectOpenHashSet<>();
+	private final Set<String> fluids = new ObjectOpenHashSet<>();
+	private final List<String> modJars = new ObjectArrayList<>();
+	private final List<String> registryLines = new ObjectArrayList<>();
+	// Tag digests of the scanned jars that have tag entries, by file name
+	private final Map<String, byte[]> jarDigests = new Object2ObjectOpenHashMap<>();
+	@Nullable
+	private Path configRoot;
+
+	private final EnumMap<TagType, Map<String, Set<RawEntry>>> definitions = new EnumMap<>(TagType.class);
+	// Tags some source replaced; they also replace the ore tags at load time
+	private final EnumMap<TagType, Set<String>> replaced = new EnumMap<>(TagType.class);
+	private final EnumMap<TagType, String[]> sortedNames = new EnumMap<>(TagType.class);
+	private final EnumMap<TagType, Map<String, List<String>>> patterns = new EnumMap<>(TagType.class);
+	private final List<String> problems = new ObjectArrayList<>();
+	private String currentSource = "";
+
+	TagCompiler() {
+		for (var type : TagType.values()) {
+			definitions.put(type, new Object2ObjectLinkedOpenHashMap<>());
+			replaced.put(type, new ObjectLinkedOpenHashSet<>());
+			patterns.put(type, new Object2ObjectOpenHashMap<>());
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		Path registry = null;
+		Path mods = null;
+		Path config = null;
+		Path out = Paths.get("prebaked.bin");
+		Path report = Paths.get("prebaked-report.txt");
+
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			var value = Paths.get(args[i + 1]);
+			switch (args[i]) {
+				case "--registry" -> registry = value;
+				case "--mods" -> mods = value;
+				case "--config" -> config = value;
+				case "--out" -> out = value;
+				case "--report" -> report = value;
+				default -> {
+					System.err.println("Unknown option: " + args[i]);
+					System.exit(2);
+				}
+			}
+		}
+
+		if (registry == null || (args.length & 1) != 0) {
+			System.err.println("Usage: TagCompiler --registry <registry.txt> [--mods <dir>] [--config <config/tags>]"
+					+ " [--out <prebaked.bin>] [--report <report.txt>]");
+			System.exit(2);
+		}
+
+		var compiler = new TagCompiler();
+		var snapshot = compiler.compile(registry, mods, config);
+		snapshot.write(out);
+		compiler.writeReport(report, snapshot);
+
+		System.out.println("Wrote " + out + " (" + compiler.problems.size() + " problems, see " + report + ")");
+	}
+
+	/**
+	 * Reads the dump and the tag files and bakes them, without writing
+	 * anything.
+	 */
+	@Nonnull
+	SnapshotFile compile(@Nonnull Path registry, @Nullable Path mods, @Nullable Path config) throws IOException {
+		readRegistry(registry);
+		if (mods != null) {
+			scanMods(mods);
+		}
+		if (config != null) {
+			configRoot = config;
+			scanConfig(config);
+		}
+		return bake();
+	}
+
+	/**
+	 * Digest of the tag entries of a jar: name, CRC and size of each, taken
+	 * from the central directory without reading any entry. Null if the jar
+	 * has none, so jars without tags never invalidate a snapshot.
+	 */
+	@Nullable
+	static byte[] jarTagDigest(@Nonnull Path jar) throws IOException {
+		var lines = new ObjectArrayList<String>();
+		try (var zip = new ZipFile(jar.toFile())) {
+			var entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				var entry = entries.nextElement();
+				var name = entry.getName();
+				if (!entry.isDirectory() && name.startsWith("data/tags/") && name.endsWith(".json")
+						&& TagParser.parseJarPath(name) != null) {
+					lines.add(name + " " + entry.getCrc() + " " + entry.getSize());
+				}
+			}
+		}
+
+		if (lines.isEmpty()) {
+			return null;
+		}
+		lines.sort(null);
+		return sha256(lines);
+	}
+
+	/**
+	 * Fingerprint of everything a snapshot is compiled from besides the
+	 * registries: the tag digest of each jar (see {@link #jarTagDigest}) by
+	 * file name, and the content of every tag file and pack below the config
+	 * root. Based on content only, so copying the inputs elsewhere keeps it.
+	 */
+	@Nonnull
+	static byte[] inputFingerprint(@Nonnull Map<String, byte[]> jarDigests, @Nullable Path config)
+			throws IOException {
+		var lines = new ObjectArrayList<String>();
+		for (var jar : jarDigests.entrySet()) {
+			lines.add("jar " + jar.getKey() + " " + toHex(jar.getValue()));
+		}
+
+		if (config != null && Files.isDirectory(config)) {
+			List<Path> files;
+			try (var paths = Files.walk(config, 4)) {
+				files = paths.filter(Files::isRegularFile)
+						.filter(path -> TagParser.isConfigTagFile(path.getFileName().toString())
+								|| TagParser.isTagPack(path.getFileName().toString()))
+						.collect(Collectors.toList());
+			}
+			for (var file : files) {
+				var relativePath = config.relativize(file).toString().replace(File.separatorChar, '/');
+				lines.add("config " + relativePath + " " + toHex(sha256(Files.readAllBytes(file))));
+			}
+		}
+
+		lines.sort(null);
+		return sha256(lines);
+	}
+
+	private static byte[] sha256(List<String> lines) {
+		var digest = sha256();
+		for (var line : lines) {
+			digest.update(line.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) '\n');
+		}
+		return digest.digest();
+	}
+
+	private static byte[] sha256(byte[] content) {
+		return sha256().digest(content);
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		var hex = new StringBuilder(bytes.length * 2);
+		for (var b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Fingerprint of the registry lines of a dump. Shared with
+	 * {@link RegistryDump} so the mod can tell whether a prebaked snapshot was
+	 * compiled against its registries.
+	 */
+	@Nonnull
+	static byte[] registryFingerprint(@Nonnull List<String> registryLines) {
+		return sha256(registryLines);
+	}
+
+	private void readRegistry(Path file) throws IOException {
+		for (var line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+			var parts = line.trim().split(" ");
+			if (parts.length < 2 || parts[0].startsWith("#")) {
+				continue;
+			}
+
+			switch (parts[0]) {
+				case "mod" -> {
+					if (parts.length > 2) {
+						modJars.add(parts[2]);
+					}
+				}
+				case "item" -> {
+					items.put(parts[1], parts.length > 2 && parts[2].equals("1"));
+					registryLines.add(line.trim());
+				}
+				case "block" -> {
+					blocks.add(parts[1]);
+					registryLines.add(line.trim());
+				}
+				case "fluid" -> {
+					fluids.add(parts[1]);
+					registryLines.add(line.trim());
+				}
+				default -> {
+				}
+			}
+		}
+	}
+
+	/**
+	 * Scans jars in the mod load order recorded in the dump; jars the dump does
+	 * not know come last, by name.
+	 */
+	private void scanMods(Path dir) throws IOException {
+		List<Path> jars;
+		try (var paths = Files.list(dir)) {
+			jars = paths.filter(path -> path.getFileName().toString().endsWith(".jar"))
+					.sorted()
+					.collect(Collectors.toList());
+		}
+
+		var order = new Object2IntOpenHashMap<String>();
+		order.defaultReturnValue(Integer.MAX_VALUE);
+		for (int i = 0; i < modJars.size(); i++) {
+			order.putIfAbsent(modJars.get(i), i);
+		}
+		jars.sort((a, b) -> Integer.compare(order.getInt(a.getFileName().toString()),
+				order.getInt(b.getFileName().toString())));
+
+		for (var jar : jars) {
+			scanJar(jar);
+		}
+	}
+
+	private void scanJar(Path jar) {
+		try {
+			var digest = jarTagDigest(jar);
+			if (digest != null) {
+				jarDigests.put(jar.getFileName().toString(), digest);
+			}
+		} catch (IOException e) {
+			// Reported by the scan below
+		}
+
+		try (var zip = new ZipFile(jar.toFile())) {
+			var entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				var entry = entries.nextElement();
+				var name = entry.getName();
+				if (entry.isDirectory() || !name.startsWith("data/tags/") || !name.endsWith(".json")) {
+					continue;
+				}
+
+				var tagPath = TagParser.parseJarPath(name);
+				if (tagPath == null) {
+					continue;
+				}
+
+				currentSource = jar.getFileName() + "!/" + name;
+				try (var reader = new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8)) {
+					var definition = TagParser.parse(reader, tagPath.tagName(), tagPath.type(), this::problem);
+					if (definition != null) {
+						apply(definition);
+					}
+				} catch (Exception e) {
+					problem("Failed to read tag entry from JAR: {}", name, e);
+				}
+			}
+		} catch (IOException e) {
+			currentSource = jar.getFileName().toString();
+			problem("Failed to scan JAR file for tags: {}", jar, e);
+		}
+	}
+
+	private void scanPack(Path pack) {
+		try (var zip = new ZipFile(pack.toFile())) {
+			var entries = new ObjectArrayList<ZipEntry>();
+			var iterator = zip.entries();
+			while (iterator.hasMoreElements()) {
+				var entry = iterator.nextElement();
+				if (!entry.isDirectory() && TagParser.parsePackPath(entry.getName()) != null) {
+					entries.add(entry);
+				}
+			}
+			entries.sort(Comparator.comparing((ZipEntry entry) -> TagParser.parsePackPath(entry.getName()).type())
+					.thenComparing(ZipEntry::getName));
+
+			for (var entry : entries) {
+				var tagPath = TagParser.parsePackPath(entry.getName());
+				currentSource = pack.getFileName() + "!/" + entry.getName();
+				try (var input = zip.getInputStream(entry)) {
+					var definition = TagParser.parseStream(input, entry.getName(), tagPath.tagName(), tagPath.type(),
+							this::problem);
+					if (definition != null) {
+						apply(definition);
+					}
+				} catch (Exception e) {
+					problem("Failed to read tag entry from pack: {}", entry.getName(), e);
+				}
+			}
+		} catch (IOException e) {
+			currentSource = pack.getFileName().toString();
+			problem("Failed to read tag pack: {}", pack, e);
+		}
+	}
+
+	/**
+	 * Tag packs first, by file name, then loose files, like the loader.
+	 */
+	private void scanConfig(Path root) {
+		List<Path> packs;
+		try (var paths = Files.list(root)) {
+			packs = paths.filter(path -> TagParser.isTagPack(path.getFileName().toString()) && Files.isRegularFile(path))
+					.sorted()
+					.collect(Collectors.toList());
+		} catch (IOException e) {
+			packs = Collections.emptyList();
+		}
+		for (var pack : packs) {
+			scanPack(pack);
+		}
+
+		for (var type : TagType.values()) {
+			var typeDir = root.resolve(type.getName());
+			if (!Files.isDirectory(typeDir)) {
+				continue;
+			}
+
+			try (var paths = Files.walk(typeDir, 3)) {
+				var iterator = paths.iterator();
+				while (iterator.hasNext()) {
+					var path = iterator.next();
+					if (!Files.isRegularFile(path) || !TagParser.isConfigTagFile(path.getFileName().toString())) {
+						continue;
+					}
+
+					var relativePath = typeDir.relativize(path).toString().replace(File.separatorChar, '/');
+					currentSource = path.toString();
+					try {
+						var definition = TagParser.parseFile(path, TagParser.convertPathToTagName(relativePath), type,
+								this::problem);
+						if (definition != null) {
+							apply(definition);
+						}
+					} catch (Exception e) {
+						problem("Failed to process tag file: {}", path, e);
+					}
+				}
+			} catch (IOException e) {
+				currentSource = typeDir.toString();
+				problem("Failed to scan directory: {}", typeDir, e);
+			}
+		}
+	}
+
+	/**
+	 * Same add/replace semantics as the mod containers; values that do not
+	 * resolve against the registry dump are reported and dropped. Exclusions
+	 * keep their "!" prefix until the tag is expanded.
+	 */
+	private void apply(TagDefinition definition) {
+		var tags = definitions.get(definition.type());
+		if (definition.replace()) {
+			tags.remove(definition.tagName());
+			replaced.get(definition.type()).add(definition.tagName());
+		}
+
+		if (definition.values().isEmpty()) {
+			return;
+		}
+
+		var entries = tags.computeIfAbsent(definition.tagName(), k -> new ObjectLinkedOpenHashSet<>());
+		for (var value : definition.values()) {
+			var id = value.id();
+			var prefix = "";
+			if (id.startsWith("!")) {
+				prefix = "!";
+				id = id.substring(1);
+			}
+
+			if (TagPattern.isPattern(id)) {
+				for (var name : expand(definition.type(), id)) {
+					var resolved = resolve(definition.type(), new RawEntry(name, value.metadata(), value.maxMetadata()));
+					if (resolved != null) {
+						entries.add(prefixed(prefix, resolved));
+					}
+				}
+				continue;
+			}
+
+			var resolved = resolve(definition.type(), new RawEntry(id, value.metadata(), value.maxMetadata()));
+			if (resolved != null) {
+				entries.add(prefixed(prefix, resolved));
+			}
+		}
+	}
+
+	private static RawEntry prefixed(String prefix, RawEntry entry) {
+		return prefix.isEmpty() ? entry : new RawEntry(prefix + entry.id(), entry.metadata(), entry.maxMetadata());
+	}
+
+	/**
+	 * Matches a pattern value against the dump's names, once per pattern.
+	 */
+	private List<String> expand(TagType type, String id) {
+		return patterns.get(type).computeIfAbsent(id, key -> {
+			var names = sortedNames.computeIfAbsent(type, k -> {
+				var sorted = (switch (type) {
+					case ITEM -> items.keySet();
+					case FLUID -> fluids;
+					case BLOCK -> blocks;
+				}).toArray(new String[0]);
+				Arrays.sort(sorted);
+				return sorted;
+			});
+
+			try {
+				var matches = TagPattern.compile(id, type != TagType.FLUID).match(names);
+				if (matches.isEmpty()) {
+					problem("Pattern matches nothing: {}", id, null);
+				}
+				return matches;
+			} catch (PatternSyntaxException e) {
+				problem("Invalid pattern: {}", id, e);
+				return Collections.emptyList();
+			}
+		});
+	}
+
+	@Nullable
+	private RawEntry resolve(TagType type, RawEntry value) {
+		var id = value.id().trim();
+		if (id.isEmpty()) {
+			return null;
+		}
+
+		if (id.startsWith("#")) {
+			var tagName = id.substring(1).trim();
+			return tagName.isEmpty() ? null : new RawEntry("#" + tagName, 0);
+		}
+
+		switch (type) {
+			case ITEM -> {
+				var name = normalize(id);
+				if (!items.containsKey(name)) {
+					problem("Unknown item: {}", id, null);
+					return null;
+				}
+				if (value.metadata() < 0) {
+					problem("Negative metadata for item: {}", id, null);
+					return null;
+				}
+				return items.getBoolean(name)
+						? new RawEntry(name, value.metadata(), value.maxMetadata())
+						: new RawEntry(name, 0);
+			}
+			case FLUID -> {
+				if (!fluids.contains(id)) {
+					problem("Unknown fluid: {}", id, null);
+					return null;
+				}
+				return new RawEntry(id, 0);
+			}
+			default -> {
+				var name = normalize(id);
+				if (!blocks.contains(name)) {
+					problem("Unknown block: {}", id, null);
+					return null;
+				}
+				return new RawEntry(name, 0);
+			}
+		}
+	}
+
+	@Nonnull
+	private SnapshotFile bake() {
+		var snapshot = new SnapshotFile(registryFingerprint(registryLines));
+		try {
+			snapshot.setInputs(inputFingerprint(jarDigests, configRoot));
+		} catch (IOException e) {
+			currentSource = String.valueOf(configRoot);
+			problem("Failed to fingerprint the tag files: {}", configRoot, e);
+		}
+
+		for (var type : TagType.values()) {
+			var tags = definitions.get(type);
+			var cache = new Object2ObjectLinkedOpenHashMap<String, Set<RawEntry>>();
+
+			for (var tagName : tags.keySet()) {
+				// Only checks the references: ore and runtime tags are not known here, so references and
+				// exclusions are written as they are and expanded at load time like scanned ones
+				expand(type, tagName, tags, cache, new ArrayDeque<>());
+				var values = tags.get(tagName);
+				var entries = new ObjectArrayList<SnapshotFile.Entry>(values.size());
+				for (var entry : values) {
+					entries.add(new SnapshotFile.Entry(entry.id(), entry.metadata(), entry.maxMetadata()));
+				}
+				snapshot.add(type, tagName, entries, replaced.get(type).contains(tagName));
+			}
+
+			// Replaced with nothing: still has to clear the ore tag of that name
+			for (var tagName : replaced.get(type)) {
+				if (!tags.containsKey(tagName)) {
+					snapshot.add(type, tagName, Collections.emptyList(), true);
+				}
+			}
+		}
+
+		return snapshot;
+	}
+
+	private Set<RawEntry> expand(TagType type, String tagName, Map<String, Set<RawEntry>> tags,
+			Map<String, Set<RawEntry>> cache, Deque<String> processing) {
+		var cached = cache.get(tagName);
+		if (cached != null) {
+			return cached;
+		}
+
+		if (processing.contains(tagName)) {
+			currentSource = type.getName() + " tags";
+			problem("Circular tag reference: {}", String.join(" -> ", processing) + " -> " + tagName, null);
+			return Collections.emptySet();
+		}
+
+		processing.addLast(tagName);
+		try {
+			var result = new ObjectLinkedOpenHashSet<RawEntry>();
+			var excluded = new ObjectArrayList<RawEntry>();
+			for (var entry : tags.getOrDefault(tagName, Collections.emptySet())) {
+				var target = entry;
+				var exclusion = entry.id().startsWith("!");
+				if (exclusion) {
+					target = new RawEntry(entry.id().substring(1), entry.metadata(), entry.maxMetadata());
+				}
+
+				if (!target.isTag()) {
+					(exclusion ? excluded : result).add(target);
+					continue;
+				}
+
+				var reference = target.id().substring(1);
+				if (!tags.containsKey(reference)) {
+					// Kept in the snapshot; it may be an ore dictionary or runtime tag
+					currentSource = type.getName() + " tag " + tagName;
+					problem("Reference to a tag no file defines, left to load time: {}", target.id(), null);
+					continue;
+				}
+				(exclusion ? excluded : result).addAll(expand(type, reference, tags, cache, processing));
+			}
+
+			if (!excluded.isEmpty()) {
+				exclude(result, excluded);
+			}
+			cache.put(tagName, result);
+			return result;
+		} finally {
+			processing.removeLast();
+		}
+	}
+
+	/**
+	 * Removes excluded entries from an expanded tag, cutting metadata ranges
+	 * of the same item around excluded metadata.
+	 */
+	static void exclude(Set<RawEntry> result, List<RawEntry> excluded) {
+		var byId = new Object2ObjectOpenHashMap<String, List<RawEntry>>();
+		for (var entry : excluded) {
+			result.remove(entry);
+			byId.computeIfAbsent(entry.id(), k -> new ObjectArrayList<>()).add(entry);
+		}
+
+		var kept = new ObjectArrayList<RawEntry>(result.size());
+		for (var entry : result) {
+			List<RawEntry> remaining = Collections.singletonList(entry);
+			for (var exclusion : byId.getOrDefault(entry.id(), Collections.emptyList())) {
+				var next = new ObjectArrayList<RawEntry>(remaining.size() + 1);
+				for (var piece : remaining) {
+					if (exclusion.maxMetadata() < piece.metadata() || exclusion.metadata() > piece.maxMetadata()) {
+						next.add(piece);
+						continue;
+					}
+					if (piece.metadata() < exclusion.metadata()) {
+						next.add(new RawEntry(piece.id(), piece.metadata(), exclusion.metadata() - 1));
+					}
+					if (piece.maxMetadata() > exclusion.maxMetadata()) {
+						next.add(new RawEntry(piece.id(), exclusion.maxMetadata() + 1, piece.maxMetadata()));
+					}
+				}
+				remaining = next;
+			}
+			kept.addAll(remaining);
+		}
+
+		result.clear();
+		result.addAll(kept);
+	}
+
+	private void writeReport(Path file, SnapshotFile snapshot) throws IOException {
+		var lines = new ObjectArrayList<String>();
+		lines.add("VintageTag compile report");
+		lines.add("");
+
+		for (var type : TagType.values()) {
+			var tags = snapshot.getTags(type);
+			int entries = 0;
+			for (var values : tags.values()) {
+				entries += values.size();
+			}
+			lines.add(type.getName() + ": " + tags.size() + " tags, " + entries + " entries");
+		}
+
+		lines.add("");
+		lines.add(problems.size() + " problems");
+		lines.addAll(problems);
+
+		var parent = file.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		Files.write(file, lines, StandardCharsets.UTF_8);
+	}
+
+	private void problem(String message, @Nullable Object subject, @Nullable Exception exception) {
+		var line = currentSource + ": " + message.replace("{}", String.valueOf(subject));
+		if (exception != null) {
+			line += " (" + exception + ")";
+		}
+		problems.add(line);
+	}
+
+	/**
+	 * Same normalization as ResourceLocation: default namespace, lower case.
+	 */
+	private static String normalize(String id) {
+		var name = id.toLowerCase(Locale.ROOT);
+		return name.indexOf(':') < 0 ? "minecraft:" + name : name;
+	}
+}
@@ -18,6 +18,31 @@ public class TagConfig {
 	@Config.LangKey("tag.config.enable_config_scanner")
 	public static boolean enableConfigScanner = true;
 
+	@Config.LangKey("tag.config.async_reload")
+	public static boolean asyncReload = true;
+
+	@Config.LangKey("tag.config.enable_profiler")
+	public static boolean enableProfiler = true;
+
+	@Config.LangKey("tag.config.write_load_diagnostics")
+	public static boolean writeLoadDiagnostics = false;
+
+	@Config.LangKey("tag.config.lazy_expansion")
+	public static boolean lazyExpansion = false;
+
+	@Config.LangKey("tag.config.enable_snapshot_cache")
+	public static boolean enableSnapshotCache = true;
+
+	@Config.LangKey("tag.config.watch_config_tags")
+	@Config.RequiresWorldRestart
+	public static boolean watchConfigTags = false;
+
+	@Config.LangKey("tag.config.compress_sync")
+	public static boolean compressSync = true;
+
+	@Config.LangKey("tag.config.ore_export_namespaces")
+	public static String[] oreExportNamespaces = {};
+
 	@Config.LangKey("tag.config.enable_tooltip")
 	@Config.RequiresMcRestart
 	public static boolean enableTooltip = true;
@@ -0,0 +1,178 @@
+package com.gardenevery.vintagetag;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import it.unimi.dsi.fastutil.objects.Object2IntLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+
+/**
+ * Collects the problems found while loading tags, so a broken generated file
+ * costs one summary instead of a log line and stack trace per bad value.
+ * <p>
+ * Problems are counted by category (the message) and by source file, and the
+ * first few of each category are kept as samples. {@link #finish()} logs the
+ * summary once per load and, if {@link TagConfig#writeLoadDiagnostics} is set,
+ * writes every problem to {@link #DETAIL_FILE}. Reports may come from any
+ * thread; problems found while preparing in the background show up in the
+ * summary of the first load. Nothing is allocated while no problem occurs.
+ */
+final class TagDiagnostics {
+	static final Path DETAIL_FILE = Paths.get("config", "vintagetag", "load-problems.log");
+	private static final int SAMPLES = 3;
+	private static final int MAX_DETAILS = 10000;
+
+	private static final Map<String, Category> CATEGORIES = new ConcurrentHashMap<>();
+	private static final AtomicInteger DETAILS = new AtomicInteger();
+
+	/**
+	 * @param message the category, with {@code {}} standing for the subject
+	 * @param source  the file or other source the problem was found in
+	 */
+	public static void report(@Nonnull String message, @Nullable String source, @Nullable Object subject,
+			@Nullable Throwable exception) {
+		CATEGORIES.computeIfAbsent(message, Category::new).add(source, subject, exception);
+		if (TagLog.isDebugEnabled()) {
+			TagLog.debug(format(message, source, subject), exception);
+		}
+	}
+
+	/**
+	 * Returns parser callbacks that report into this collector for one source.
+	 */
+	@Nonnull
+	public static TagParser.Problems forSource(@Nonnull String source) {
+		return (message, subject, exception) -> report(message, source, subject, exception);
+	}
+
+	/**
+	 * Logs the summary of everything reported since the last call, writes the
+	 * detail file if enabled, and starts over.
+	 */
+	public static void finish() {
+		if (CATEGORIES.isEmpty()) {
+			return;
+		}
+
+		var categories = new ObjectArrayList<Category>();
+		for (var message : CATEGORIES.keySet()) {
+			var category = CATEGORIES.remove(message);
+			if (category != null) {
+				categories.add(category);
+			}
+		}
+		DETAILS.set(0);
+
+		int total = 0;
+		var sources = new ObjectOpenHashSet<String>();
+		for (var category : categories) {
+			synchronized (category) {
+				total += category.count;
+				sources.addAll(category.sources.keySet());
+			}
+		}
+
+		TagLog.warn("{} problem(s) in {} source(s) while loading tags", total, sources.size());
+		for (var category : categories) {
+			synchronized (category) {
+				TagLog.warn("  {} - {} time(s) in {} source(s)", category.message, category.count,
+						category.sources.size());
+				for (var sample : category.samples) {
+					TagLog.warn("    e.g. {}", sample);
+				}
+			}
+		}
+
+		if (TagConfig.writeLoadDiagnostics) {
+			writeDetails(categories, total, sources.size());
+			TagLog.warn("Details written to {}", DETAIL_FILE);
+		}
+	}
+
+	private static void writeDetails(List<Category> categories, int total, int sourceCount) {
+		var lines = new ObjectArrayList<String>();
+		lines.add(total + " problem(s) in " + sourceCount + " source(s)");
+		for (var category : categories) {
+			synchronized (category) {
+				lines.add("");
+				lines.add(category.message + " - " + category.count + " time(s)");
+				for (var source : category.sources.object2IntEntrySet()) {
+					lines.add("  " + source.getKey() + ": " + source.getIntValue());
+				}
+				lines.add("");
+				lines.addAll(category.details);
+				if (category.details.size() < category.count) {
+					lines.add("  ... " + (category.count - category.details.size()) + " more");
+				}
+				if (category.exception != null) {
+					var trace = new StringWriter();
+					category.exception.printStackTrace(new PrintWriter(trace));
+					lines.add("");
+					lines.add(trace.toString());
+				}
+			}
+		}
+
+		try {
+			Files.createDirectories(DETAIL_FILE.toAbsolutePath().getParent());
+			Files.write(DETAIL_FILE, lines, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			TagLog.info("Failed to write tag load problems: {}", DETAIL_FILE, e);
+		}
+	}
+
+	private static String format(String message, @Nullable String source, @Nullable Object subject) {
+		var text = message.replace("{}", String.valueOf(subject));
+		return source != null ? source + ": " + text : text;
+	}
+
+	private static final class Category {
+		private final String message;
+		private final Object2IntLinkedOpenHashMap<String> sources = new Object2IntLinkedOpenHashMap<>();
+		private final List<String> samples = new ObjectArrayList<>(SAMPLES);
+		private final List<String> details = new ObjectArrayList<>();
+		// The first exception, its stack trace goes to the detail file
+		@Nullable
+		private Throwable exception;
+		private int count;
+
+		Category(String message) {
+			this.message = message;
+		}
+
+		synchronized void add(@Nullable String source, @Nullable Object subject, @Nullable Throwable exception) {
+			count++;
+			sources.addTo(source != null ? source : "", 1);
+			if (this.exception == null) {
+				this.exception = exception;
+			}
+
+			boolean sample = samples.size() < SAMPLES;
+			boolean detail = TagConfig.writeLoadDiagnostics && DETAILS.getAndIncrement() < MAX_DETAILS;
+			if (sample || detail) {
+				var text = format(message, source, subject);
+				if (exception != null) {
+					text += " (" + exception + ")";
+				}
+				if (sample) {
+					samples.add(text);
+				}
+				if (detail) {
+					details.add("  " + text);
+				}
+			}
+		}
+	}
+}
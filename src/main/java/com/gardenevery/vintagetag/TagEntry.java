@@ -1,10 +1,14 @@
 package com.gardenevery.vintagetag;
 
+import java.util.Collections;
+import java.util.List;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
 import com.github.bsideup.jabel.Desugar;
 
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
 import net.minecraft.block.Block;
 import net.minecraft.item.Item;
 import net.minecraft.item.ItemStack;
@@ -14,10 +18,11 @@ import net.minecraftforge.fluids.Fluid;
 import net.minecraftforge.fluids.FluidRegistry;
 import net.minecraftforge.fluids.FluidStack;
 import net.minecraftforge.fml.common.registry.ForgeRegistries;
+import net.minecraftforge.oredict.OreDictionary;
 
 interface TagEntry {
 	enum EntryType {
-		KEY, TAG, EMPTY
+		KEY, TAG, RANGE, EXCLUDE, EMPTY
 	}
 
 	default EntryType getType() {
@@ -36,6 +41,43 @@ interface TagEntry {
 		return getType() == EntryType.TAG;
 	}
 
+	default boolean isRange() {
+		return getType() == EntryType.RANGE;
+	}
+
+	default boolean isExclusion() {
+		return getType() == EntryType.EXCLUDE;
+	}
+
+	/**
+	 * The object a range can cover this entry through, e.g. the Item of an
+	 * item key or range, or null.
+	 */
+	@Nullable
+	default Object getOwner() {
+		return null;
+	}
+
+	/**
+	 * Whether this range stands for the given key. Always false for entries
+	 * that are not ranges.
+	 */
+	default boolean covers(@Nonnull TagEntry key) {
+		return false;
+	}
+
+	/**
+	 * What remains of this entry once the excluded one is taken out: itself if
+	 * they do not overlap, nothing if it is fully excluded, otherwise the
+	 * remaining parts of a range.
+	 */
+	@Nonnull
+	default List<TagEntry> without(@Nonnull TagEntry excluded) {
+		return equals(excluded) || excluded.covers(this)
+				? Collections.emptyList()
+				: Collections.singletonList(this);
+	}
+
 	@Nonnull
 	default String getTagName() {
 		return "";
@@ -99,6 +141,22 @@ interface TagEntry {
 				: new ItemEntry.ItemKey(stack.getItem(), stack.getHasSubtypes() ? stack.getMetadata() : 0);
 	}
 
+	/**
+	 * An entry for metadata min to max of the item. Collapses to a single key
+	 * if the range is one value wide or the item has no subtypes.
+	 */
+	@Nonnull
+	static ItemEntry itemRange(@Nullable Item item, int min, int max) {
+		if (item == null || min < 0 || min > max) {
+			return ItemEntry.EMPTY;
+		}
+
+		if (!item.getHasSubtypes()) {
+			return new ItemEntry.ItemKey(item, 0);
+		}
+		return min == max ? new ItemEntry.ItemKey(item, min) : new ItemEntry.ItemRange(item, min, max);
+	}
+
 	@Nonnull
 	static ItemEntry itemTag(@Nullable String tagName) {
 		return tagName == null || tagName.trim().isEmpty() ? ItemEntry.EMPTY : new TagInclude(tagName);
@@ -222,6 +280,104 @@ interface TagEntry {
 			public ItemStack getStack() {
 				return new ItemStack(item, 1, metadata);
 			}
+
+			@Nonnull
+			@Override
+			public Object getOwner() {
+				return item;
+			}
+		}
+
+		/**
+		 * Metadata min to max of one item with subtypes. Kept as one entry and
+		 * matched against item keys at lookup time instead of being expanded;
+		 * max {@link OreDictionary#WILDCARD_VALUE} stands for every metadata.
+		 */
+		@Desugar
+		record ItemRange(Item item, int min, int max) implements ItemEntry {
+			@Override
+			public EntryType getType() {
+				return EntryType.RANGE;
+			}
+
+			@Nonnull
+			@Override
+			public Object getOwner() {
+				return item;
+			}
+
+			@Override
+			public boolean covers(@Nonnull TagEntry key) {
+				return key instanceof ItemKey itemKey && itemKey.item() == item && itemKey.metadata() >= min
+						&& itemKey.metadata() <= max;
+			}
+
+			@Nonnull
+			@Override
+			public List<TagEntry> without(@Nonnull TagEntry excluded) {
+				int low;
+				int high;
+				if (excluded instanceof ItemKey key && key.item() == item) {
+					low = high = key.metadata();
+				} else if (excluded instanceof ItemRange range && range.item() == item) {
+					low = range.min();
+					high = range.max();
+				} else {
+					return Collections.singletonList(this);
+				}
+
+				if (high < min || low > max) {
+					return Collections.singletonList(this);
+				}
+
+				var pieces = new ObjectArrayList<TagEntry>(2);
+				if (low > min) {
+					pieces.add(TagEntry.itemRange(item, min, low - 1));
+				}
+				if (high < max) {
+					pieces.add(TagEntry.itemRange(item, high + 1, max));
+				}
+				return pieces;
+			}
+
+			public boolean isWildcard() {
+				return min == 0 && max == OreDictionary.WILDCARD_VALUE;
+			}
+
+			/**
+			 * The item's subtypes (see {@link ItemSubtypes}) that fall into the
+			 * range, so a wildcard with some metadata excluded still lists only
+			 * real subtypes. If the item lists none, a wildcard is one stack
+			 * with {@link OreDictionary#WILDCARD_VALUE}, what is left of a
+			 * wildcard after an exclusion cannot be listed, and any other range
+			 * is one stack per metadata.
+			 */
+			@Nonnull
+			public List<ItemStack> getStacks() {
+				var subtypes = ItemSubtypes.get(item);
+				if (!subtypes.isEmpty()) {
+					var stacks = new ObjectArrayList<ItemStack>();
+					for (var key : subtypes) {
+						if (covers(key)) {
+							stacks.add(key.getStack());
+						}
+					}
+					return stacks;
+				}
+
+				if (isWildcard()) {
+					return Collections.singletonList(new ItemStack(item, 1, OreDictionary.WILDCARD_VALUE));
+				}
+				if (max == OreDictionary.WILDCARD_VALUE) {
+					return Collections.emptyList();
+				}
+
+				var stacks = new ObjectArrayList<ItemStack>(max - min + 1);
+				for (int metadata = min; metadata <= max; metadata++) {
+					stacks.add(new ItemStack(item, 1, metadata));
+				}
+				return stacks;
+			}
 		}
 	}
 
@@ -247,6 +403,18 @@ interface TagEntry {
 		}
 	}
 
+	/**
+	 * Takes an entry, or for a {@link TagInclude} every entry of that tag, out
+	 * of the tag it is listed in once that tag has been expanded.
+	 */
+	@Desugar
+	record Exclusion(TagEntry entry) implements ItemEntry, FluidEntry, BlockEntry {
+		@Override
+		public EntryType getType() {
+			return EntryType.EXCLUDE;
+		}
+	}
+
 	@Desugar
 	record TagInclude(String tagName) implements ItemEntry, FluidEntry, BlockEntry {
 		@Override
@@ -6,7 +6,9 @@ import java.util.Set;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
+import com.gardenevery.vintagetag.TagEntry.ItemEntry;
 import com.gardenevery.vintagetag.TagEntry.ItemEntry.ItemKey;
+import com.gardenevery.vintagetag.TagEntry.ItemEntry.ItemRange;
 import com.gardenevery.vintagetag.TagEntry.FluidEntry.FluidKey;
 import com.gardenevery.vintagetag.TagEntry.BlockEntry.BlockKey;
 
@@ -151,6 +153,34 @@ public final class TagHelper {
 					: TagManager.item().getTagsList(TagEntry.item(stack));
 		}
 
+		/**
+		 * Get the OreDictionary names of the specified ItemStack, answered from
+		 * the current item tags: every tag named like an OreDictionary entry
+		 * that contains the stack. Unlike OreDictionary.getOreIDs this allocates
+		 * nothing, apart from building an index once after each tag reload.
+		 *
+		 * @param stack
+		 *            The ItemStack to query, can be null
+		 * @return An unmodifiable set of ore names, empty if stack is null or empty
+		 */
+		@Nonnull
+		public Set<String> oreNames(@Nullable ItemStack stack) {
+			return (stack == null || stack.isEmpty()) ? Collections.emptySet() : TagManager.oreNames().get(stack);
+		}
+
+		/**
+		 * Get the OreDictionary names of the specified ItemStack as a List
+		 *
+		 * @param stack
+		 *            The ItemStack to query, can be null
+		 * @return An unmodifiable list of ore names, empty if stack is null or empty
+		 */
+		@Nonnull
+		public List<String> oreNamesList(@Nullable ItemStack stack) {
+			return (stack == null || stack.isEmpty()) ? Collections.emptyList()
+					: TagManager.oreNames().get(stack).asList();
+		}
+
 		/**
 		 * Get all tags defined for items
 		 *
@@ -190,6 +220,8 @@ public final class TagHelper {
 			for (var entry : entries) {
 				if (entry instanceof ItemKey key) {
 					stacks.add(key.getStack());
+				} else if (entry instanceof ItemRange range) {
+					stacks.addAll(range.getStacks());
 				}
 			}
 			return stacks;
@@ -217,6 +249,8 @@ public final class TagHelper {
 			for (var entry : entries) {
 				if (entry instanceof ItemKey key) {
 					stacks.add(key.getStack());
+				} else if (entry instanceof ItemRange range) {
+					stacks.addAll(range.getStacks());
 				}
 			}
 			return Collections.unmodifiableList(stacks);
@@ -235,6 +269,8 @@ public final class TagHelper {
 			for (var entry : entries) {
 				if (entry instanceof ItemKey key) {
 					stacks.add(key.getStack());
+				} else if (entry instanceof ItemRange range) {
+					stacks.addAll(range.getStacks());
 				}
 			}
 			return stacks;
@@ -251,11 +287,12 @@ public final class TagHelper {
 			if (entries.isEmpty()) {
 				return Collections.emptyList();
 			}
-
 			List<ItemStack> stacks = new ObjectArrayList<>(entries.size());
 			for (var entry : entries) {
 				if (entry instanceof ItemKey itemKey) {
 					stacks.add(itemKey.getStack());
+				} else if (entry instanceof ItemRange range) {
+					stacks.addAll(range.getStacks());
 				}
 			}
 			return Collections.unmodifiableList(stacks);
@@ -2,35 +2,44 @@ package com.gardenevery.vintagetag;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Set;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
-import com.gardenevery.vintagetag.TagEntry.BlockEntry;
-import com.gardenevery.vintagetag.TagEntry.FluidEntry;
-import com.gardenevery.vintagetag.TagEntry.ItemEntry;
+import com.gardenevery.vintagetag.TagParser.RawEntry;
+import com.gardenevery.vintagetag.TagParser.TagDefinition;
+import com.gardenevery.vintagetag.TagSources.Contribution;
 import com.github.bsideup.jabel.Desugar;
-import com.google.gson.Gson;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
 
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ReferenceLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2ReferenceOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 
 import net.minecraftforge.fml.common.Loader;
 
-import org.apache.commons.io.IOUtils;
-
 /**
  * Custom Tag Loader
  * <p>
@@ -38,6 +47,9 @@ import org.apache.commons.io.IOUtils;
  * <p>
  * Scans the configuration file directory: config/tags/{type}/
  * <p>
+ * Config tags can also use the compact line based bulk format (*.tagbin)
+ * described in {@link TagParser}; its files follow the same naming rules
+ * <p>
  * Scans each mod jar file within: resources/data/tags/{type}/
  * <p>
  * {type} corresponds to item/fluid/block
@@ -60,6 +72,9 @@ import org.apache.commons.io.IOUtils;
  * <p>
  * If metadata is 0 or not present, { "id": "mod:name" } can be used
  * <p>
+ * Metadata may also be a range "min-max" or "*" for every metadata; it is
+ * kept as a single range entry and matched at lookup time
+ * <p>
  * The format for fluid tags and block tags is "mod:name"
  * <p>
  * <strong>Tag References:</strong> The tag system supports referencing other
@@ -69,8 +84,38 @@ import org.apache.commons.io.IOUtils;
  * hierarchical tag organization and reduces duplication. Note: Circular
  * references should be avoided.
  * <p>
+ * <strong>Patterns:</strong> a value may also be a glob such as
+ * "minecraft:*_wool" or a regular expression such as
+ * "#regex:thermal:.*_gear"; see {@link TagPattern}. Patterns are expanded
+ * against the registry names when the tag is resolved.
+ * <p>
+ * <strong>Exclusions:</strong> a value prefixed with "!" ("!mod:name",
+ * "!#tag" or "!" in front of a pattern) is removed from the tag after all of
+ * its references have been expanded, regardless of where it appears in the
+ * "values" array. Excluding a single metadata splits a range around it.
+ * <p>
  * OreSync will automatically synchronize the contents of the mineral dictionary
  * to the tag system
+ * <p>
+ * If a prebaked snapshot produced by {@link TagCompiler} exists at
+ * config/vintagetag/prebaked.bin and was compiled against the current
+ * registries, it is loaded instead of scanning mod jars and config files,
+ * unless the content of the tag files it was compiled from has changed since
+ * (see {@link TagCompiler#inputFingerprint})
+ * <p>
+ * Jars and config files are read and parsed concurrently, but the parsed
+ * definitions are applied one source at a time in mod list order followed by
+ * config files, so "replace" behaves exactly as with a sequential scan
+ * <p>
+ * Whole tag packs can be dropped into config/tags as .zip archives laid out
+ * like config/tags itself (item/a/b.json = item tag "a:b"). Each pack is read
+ * through one ZipFile and its entries are parsed in parallel; packs apply
+ * after mod jars and before loose config files, in file name order, so loose
+ * files can still override what a pack defines
+ * <p>
+ * Reading and parsing already start in the background during mod
+ * initialization (see {@link #prepare()}); only applying the definitions
+ * waits for the registries
  */
 
 // Directory structure:
@@ -102,17 +147,178 @@ import org.apache.commons.io.IOUtils;
 // ]
 // }
 final class TagLoader {
-	private static final Gson GSON = new Gson();
-	private static final Pattern VALID_FILENAME_PATTERN = Pattern.compile("^[a-zA-Z0-9_]+\\.json$",
-			Pattern.CASE_INSENSITIVE);
-	private static final Object2ReferenceOpenHashMap<File, String> CACHED_TAG_JARS = new Object2ReferenceOpenHashMap<>();
+	static final Path PREBAKED_FILE = Paths.get("config", "vintagetag", "prebaked.bin");
+	private static final String PREBAKED_SOURCE = "prebaked";
+	// Insertion ordered: jars are applied in mod list order
+	private static final ObjectLinkedOpenHashSet<File> MOD_JARS = new ObjectLinkedOpenHashSet<>();
+	// Kept across reloads, only touched by one loading thread at a time
+	private static final Object2ReferenceOpenHashMap<File, JarIndex> JAR_INDEX = new Object2ReferenceOpenHashMap<>();
+	// Kept across reloads; also invalidated by TagWatcher
+	private static final Map<Path, ConfigFile> CONFIG_INDEX = new ConcurrentHashMap<>();
+	// Tag packs in apply order, only touched by the loading thread
+	private static final Object2ReferenceLinkedOpenHashMap<Path, JarIndex> PACK_INDEX = new Object2ReferenceLinkedOpenHashMap<>();
+	// Paths invalidated by TagWatcher, dropped from PACK_INDEX by the next pack scan
+	private static final Queue<Path> INVALIDATED_PACKS = new ConcurrentLinkedQueue<>();
+	private static final ForkJoinPool WORKER_POOL = new ForkJoinPool(
+			Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 8)), pool -> {
+				var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+				thread.setName("VintageTag Worker-" + thread.getPoolIndex());
+				thread.setContextClassLoader(TagLoader.class.getClassLoader());
+				return thread;
+			}, null, false);
 	private static boolean TAG_JAR_SCAN_DONE = false;
+	// The prebaked file as last matched against the registries
+	@Nullable
+	private static volatile FileStamp validatedPrebaked;
+	// Tag digests of the mod jars by file name, only touched by the loading thread;
+	// jars do not change while the game runs
+	@Nullable
+	private static Map<String, byte[]> modJarDigests;
+
+	/**
+	 * Registers the prebaked snapshot if one is present, matches the current
+	 * registries and was compiled from tag files with the same content as the
+	 * ones the enabled scanners would read. Tags that were replaced when
+	 * compiling keep replacing, so they also drop the ore tag of the same name.
+	 *
+	 * @return true if the snapshot was loaded and scanning can be skipped
+	 */
+	public static boolean loadPrebaked() {
+		if (!Files.isRegularFile(PREBAKED_FILE)) {
+			return false;
+		}
+
+		try {
+			var attributes = Files.readAttributes(PREBAKED_FILE, BasicFileAttributes.class);
+			var stamp = new FileStamp(attributes.size(), attributes.lastModifiedTime().toMillis());
+			if (!Arrays.equals(SnapshotFile.readInputs(PREBAKED_FILE), inputFingerprint())) {
+				TagLog.warn("Ignoring {}: the tag files it was compiled from have changed, scanning instead",
+						PREBAKED_FILE);
+				return false;
+			}
+			if (TagSources.reuse(PREBAKED_SOURCE, stamp)) {
+				return true;
+			}
+
+			var snapshot = SnapshotFile.read(PREBAKED_FILE);
+			if (!snapshot.matches(RegistryDump.fingerprint())) {
+				TagLog.info("Ignoring {}: it was compiled against different registries", PREBAKED_FILE);
+				return false;
+			}
+			validatedPrebaked = stamp;
+
+			TagSources.add(PREBAKED_SOURCE, stamp, contributions(snapshot));
+			TagLog.info("Loaded prebaked tags from {}", PREBAKED_FILE);
+			return true;
+		} catch (IOException e) {
+			TagLog.info("Failed to read prebaked tags: {}", PREBAKED_FILE, e);
+			return false;
+		}
+	}
+
+	/**
+	 * The contributions of a prebaked snapshot, one per tag.
+	 */
+	@Nonnull
+	static List<Contribution> contributions(@Nonnull SnapshotFile snapshot) {
+		var contributions = new ObjectArrayList<Contribution>();
+		for (var type : TagType.values()) {
+			for (var tag : snapshot.getTags(type).entrySet()) {
+				var values = new ObjectArrayList<RawEntry>(tag.getValue().size());
+				for (var entry : tag.getValue()) {
+					values.add(new RawEntry(entry.id(), entry.metadata(), entry.maxMetadata()));
+				}
+				contributions.add(new Contribution(type, tag.getKey(), snapshot.isReplace(type, tag.getKey()),
+						values));
+			}
+		}
+		return contributions;
+	}
+
+	/**
+	 * The contribution of one scanned tag file.
+	 */
+	@Nonnull
+	static Contribution contribution(@Nonnull TagDefinition definition) {
+		return new Contribution(definition.type(), definition.tagName(), definition.replace(), definition.values());
+	}
+
+	/**
+	 * The input fingerprint a snapshot compiled from what the enabled
+	 * scanners read would carry. Config files are hashed on every call, the
+	 * mod jars only once.
+	 */
+	private static byte[] inputFingerprint() throws IOException {
+		Map<String, byte[]> jarDigests = Collections.emptyMap();
+		if (TagConfig.enableModScanner) {
+			if (modJarDigests == null) {
+				listModJars();
+				var digests = new Object2ObjectOpenHashMap<String, byte[]>();
+				for (var jarFile : MOD_JARS) {
+					var digest = TagCompiler.jarTagDigest(jarFile.toPath());
+					if (digest != null) {
+						digests.put(jarFile.getName(), digest);
+					}
+				}
+				modJarDigests = digests;
+			}
+			jarDigests = modJarDigests;
+		}
+		return TagCompiler.inputFingerprint(jarDigests,
+				TagConfig.enableConfigScanner ? Paths.get("config", "tags") : null);
+	}
+
+	/**
+	 * Reads and parses mod jars and config files into the indexes ahead of
+	 * the first load. Nothing here needs the registries, so it can run in the
+	 * background while mods are still initializing; the scans of the first
+	 * load then only have to check that nothing changed in between. It is
+	 * skipped only for a prebaked snapshot that a load has already validated:
+	 * one that turns out not to match must not leave the scans without their
+	 * indexes.
+	 */
+	public static void prepare() {
+		var validated = validatedPrebaked;
+		if (validated != null && validated.equals(prebakedStamp())) {
+			return;
+		}
 
-	private enum Operation {
-		ADD, REPLACE
+		if (TagConfig.enableModScanner) {
+			indexModJars();
+		}
+		if (TagConfig.enableConfigScanner) {
+			indexTagPacks(Paths.get("config", "tags"));
+			indexConfigTags(Paths.get("config", "tags"), ReloadScope.ALL);
+		}
+	}
+
+	@Nullable
+	private static FileStamp prebakedStamp() {
+		try {
+			var attributes = Files.readAttributes(PREBAKED_FILE, BasicFileAttributes.class);
+			return new FileStamp(attributes.size(), attributes.lastModifiedTime().toMillis());
+		} catch (IOException e) {
+			return null;
+		}
 	}
 
 	public static void scanModTags() {
+		indexModJars();
+		for (var jarFile : MOD_JARS) {
+			var index = JAR_INDEX.get(jarFile);
+			if (index == null) {
+				continue;
+			}
+
+			for (var entry : index.entries()) {
+				if (entry.definition() != null) {
+					addSource("jar:" + jarFile.getPath() + "!/" + entry.name(), entry.definition());
+				}
+			}
+		}
+	}
+
+	private static void listModJars() {
 		if (!TAG_JAR_SCAN_DONE) {
 			for (var mod : Loader.instance().getModList()) {
 				var source = mod.getSource();
@@ -120,42 +326,98 @@ final class TagLoader {
 					continue;
 				}
 				if (source.isFile() && source.getName().endsWith(".jar")) {
-					if (jarHasTagsDir(source)) {
-						CACHED_TAG_JARS.put(source, mod.getModId());
-					}
+					MOD_JARS.add(source);
 				}
 			}
 			TAG_JAR_SCAN_DONE = true;
 		}
+	}
+
+	private static void indexModJars() {
+		listModJars();
 
-		for (var entry : CACHED_TAG_JARS.object2ReferenceEntrySet()) {
-			processJarTags(entry.getKey());
+		var tasks = new ObjectArrayList<Callable<JarIndex>>(MOD_JARS.size());
+		for (var jarFile : MOD_JARS) {
+			var previous = JAR_INDEX.get(jarFile);
+			tasks.add(() -> indexJar(jarFile, previous));
 		}
-	}
 
-	public static void scanConfigTags() {
-		scanConfigTagDirectory(Paths.get("config", "tags"));
+		var indexes = runAll(tasks);
+		int jar = 0;
+		for (var jarFile : MOD_JARS) {
+			var index = indexes.get(jar++);
+			if (index != null) {
+				JAR_INDEX.put(jarFile, index);
+			} else {
+				JAR_INDEX.remove(jarFile);
+			}
+		}
 	}
 
-	private static boolean jarHasTagsDir(File jarFile) {
-		try (var zip = new ZipFile(jarFile)) {
-			var entries = zip.entries();
-			while (entries.hasMoreElements()) {
-				var entry = entries.nextElement();
-				var entryName = entry.getName();
-				if (entryName.equals("data/tags/") || (entryName.startsWith("data/tags/") && entry.isDirectory())) {
-					return true;
+	/**
+	 * Scans config/tags. Files outside a partial scope are taken from the
+	 * previous scan without touching the disk; files inside it are always read
+	 * again. Tag packs are checked as a whole and apply first.
+	 */
+	public static void scanConfigTags(@Nonnull ReloadScope scope) {
+		indexTagPacks(Paths.get("config", "tags"));
+		for (var pack : PACK_INDEX.object2ReferenceEntrySet()) {
+			for (var entry : pack.getValue().entries()) {
+				if (entry.definition() != null) {
+					addSource("config:" + pack.getKey() + "!/" + entry.name(), entry.definition());
 				}
 			}
-		} catch (IOException e) {
-			//
 		}
-		return false;
+
+		for (var file : indexConfigTags(Paths.get("config", "tags"), scope)) {
+			if (file.definition() != null) {
+				addSource("config:" + file.path(), file.definition());
+			}
+		}
 	}
 
-	private static void processJarTags(File jarFile) {
-		List<JarTagData> tagList = new ArrayList<>();
+	/**
+	 * Runs the tasks on the worker pool and returns their results in task
+	 * order. A task that failed unexpectedly yields null.
+	 */
+	static <T> List<T> runAll(List<Callable<T>> tasks) {
+		var futures = new ObjectArrayList<ForkJoinTask<T>>(tasks.size());
+		for (var task : tasks) {
+			futures.add(WORKER_POOL.submit(task));
+		}
 
+		var results = new ObjectArrayList<T>(futures.size());
+		for (var future : futures) {
+			try {
+				results.add(future.join());
+			} catch (RuntimeException e) {
+				TagLog.info("Tag load task failed", e);
+				results.add(null);
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Returns the tag entries of a jar. An unchanged jar is not opened at all;
+	 * otherwise its central directory is walked once and only entries whose
+	 * size or CRC differ from the previous index are read and parsed again.
+	 */
+	private static JarIndex indexJar(File jarFile, @Nullable JarIndex previous) {
+		long length = jarFile.length();
+		long lastModified = jarFile.lastModified();
+		if (previous != null && previous.length() == length && previous.lastModified() == lastModified) {
+			return previous;
+		}
+
+		var known = new Object2ReferenceOpenHashMap<String, IndexedEntry>();
+		if (previous != null) {
+			for (var entry : previous.entries()) {
+				known.put(entry.name(), entry);
+			}
+		}
+
+		List<IndexedEntry> indexed = new ArrayList<>();
 		try (var zip = new ZipFile(jarFile)) {
 			var entries = zip.entries();
 
@@ -165,276 +427,301 @@ final class TagLoader {
 					var name = entry.getName();
 
 					if (name.startsWith("data/tags/") && name.endsWith(".json")) {
-						processJarEntry(entry, zip, tagList);
+						var old = known.get(name);
+						if (old != null && old.size() == entry.getSize() && old.crc() == entry.getCrc()) {
+							indexed.add(old);
+						} else {
+							processJarEntry(entry, zip, indexed);
+						}
 					}
 				}
 			}
 		} catch (IOException e) {
-			TagLog.info("Failed to scan JAR file for tags: {}", jarFile.getName(), e);
-		}
-
-		for (var tagData : tagList) {
-			processTagJson(tagData.jsonObject(), tagData.tagName(), tagData.type());
+			TagDiagnostics.report("Failed to scan JAR file for tags: {}", jarFile.getPath(), jarFile.getName(), e);
 		}
+		return new JarIndex(length, lastModified, indexed);
 	}
 
-	private static void processJarEntry(ZipEntry entry, ZipFile zip, List<JarTagData> tagList) {
+	private static void processJarEntry(ZipEntry entry, ZipFile zip, List<IndexedEntry> indexed) {
 		var entryName = entry.getName();
-		var parts = entryName.split("/");
-
-		if (parts.length < 4) {
+		var tagPath = TagParser.parseJarPath(entryName);
+		if (tagPath == null) {
 			return;
 		}
 
-		var tagType = TagType.getType(parts[2]);
-		if (tagType == null) {
-			return;
+		var source = zip.getName() + "!/" + entryName;
+		try (var reader = new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8)) {
+			var definition = TagParser.parse(reader, tagPath.tagName(), tagPath.type(),
+					TagDiagnostics.forSource(source));
+			indexed.add(new IndexedEntry(entryName, entry.getSize(), entry.getCrc(), definition));
+		} catch (IOException e) {
+			TagDiagnostics.report("Failed to read tag entry from JAR: {}", source, entryName, e);
 		}
+	}
 
-		var fileName = parts[parts.length - 1];
-		if (!isValidJsonFileName(fileName)) {
-			return;
+	/**
+	 * Brings the pack index up to date with the .zip files directly in
+	 * config/tags, ordered by file name.
+	 */
+	private static void indexTagPacks(Path rootDir) {
+		Path invalidated;
+		while ((invalidated = INVALIDATED_PACKS.poll()) != null) {
+			var prefix = invalidated;
+			PACK_INDEX.keySet().removeIf(path -> path.startsWith(prefix));
 		}
 
-		if (parts.length - 4 > 3) {
-			return;
+		List<Path> packs;
+		try (var paths = Files.list(rootDir)) {
+			packs = paths.filter(path -> TagParser.isTagPack(path.getFileName().toString()) && Files.isRegularFile(path))
+					.map(Path::toAbsolutePath)
+					.sorted()
+					.collect(Collectors.toList());
+		} catch (IOException e) {
+			packs = Collections.emptyList();
 		}
 
-		var tagName = buildTagNameFromPath(fileName, parts);
-
-		try (var stream = zip.getInputStream(entry)) {
-			var json = IOUtils.toString(stream, StandardCharsets.UTF_8);
-			var jsonObject = GSON.fromJson(json, JsonObject.class);
-
-			if (jsonObject != null) {
-				tagList.add(new JarTagData(tagName, tagType, jsonObject));
+		var indexed = new Object2ReferenceLinkedOpenHashMap<Path, JarIndex>();
+		for (var pack : packs) {
+			var index = indexTagPack(pack, PACK_INDEX.get(pack));
+			if (index != null) {
+				indexed.put(pack, index);
 			}
-		} catch (IOException e) {
-			TagLog.info("Failed to read tag entry from JAR: {}", entryName, e);
 		}
+		PACK_INDEX.clear();
+		PACK_INDEX.putAll(indexed);
 	}
 
-	private static void scanConfigTagDirectory(Path rootDir) {
-		if (!Files.exists(rootDir) || !Files.isDirectory(rootDir)) {
-			return;
+	/**
+	 * Returns the tag entries of a pack, like {@link #indexJar} does for mod
+	 * jars, but with the changed entries parsed in parallel from the one open
+	 * archive. Entries are kept in type order and then by name, so a pack
+	 * applies the same way whatever order it was zipped in.
+	 */
+	@Nullable
+	private static JarIndex indexTagPack(Path pack, @Nullable JarIndex previous) {
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(pack, BasicFileAttributes.class);
+		} catch (IOException e) {
+			TagDiagnostics.report("Failed to read tag pack: {}", pack.toString(), pack.getFileName(), e);
+			return null;
 		}
 
-		for (var type : TagType.values()) {
-			var typeDir = rootDir.resolve(type.getName());
-			if (Files.exists(typeDir) && Files.isDirectory(typeDir)) {
-				scanConfigTypeDirectory(typeDir, type);
-			}
+		long length = attributes.size();
+		long lastModified = attributes.lastModifiedTime().toMillis();
+		if (previous != null && previous.length() == length && previous.lastModified() == lastModified) {
+			return previous;
 		}
-	}
-
-	private static void scanConfigTypeDirectory(Path typeDir, TagType type) {
-		try (var paths = Files.walk(typeDir, 3)) {
-			var iterator = paths.iterator();
-
-			while (iterator.hasNext()) {
-				var path = iterator.next();
 
-				if (Files.isRegularFile(path)) {
-					var fileName = path.getFileName().toString();
+		var known = new Object2ReferenceOpenHashMap<String, IndexedEntry>();
+		if (previous != null) {
+			for (var entry : previous.entries()) {
+				known.put(entry.name(), entry);
+			}
+		}
 
-					if (fileName.endsWith(".json")) {
-						var relativePath = typeDir.relativize(path).toString().replace(File.separatorChar, '/');
-						var tagName = convertPathToTagName(relativePath);
-						processConfigTagFile(path, tagName, type);
+		try (var zip = new ZipFile(pack.toFile())) {
+			var candidates = new ObjectArrayList<PackEntry>();
+			var entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				var entry = entries.nextElement();
+				if (!entry.isDirectory()) {
+					var tagPath = TagParser.parsePackPath(entry.getName());
+					if (tagPath != null) {
+						candidates.add(new PackEntry(entry, tagPath));
 					}
 				}
 			}
+			candidates.sort(Comparator.comparing((PackEntry candidate) -> candidate.path().type())
+					.thenComparing(candidate -> candidate.entry().getName()));
+
+			var tasks = new ObjectArrayList<Callable<IndexedEntry>>(candidates.size());
+			for (var candidate : candidates) {
+				var entry = candidate.entry();
+				var old = known.get(entry.getName());
+				if (old != null && old.size() == entry.getSize() && old.crc() == entry.getCrc()) {
+					tasks.add(() -> old);
+				} else {
+					tasks.add(() -> processPackEntry(pack, zip, candidate));
+				}
+			}
+
+			var indexed = new ObjectArrayList<IndexedEntry>(tasks.size());
+			for (var entry : runAll(tasks)) {
+				if (entry != null) {
+					indexed.add(entry);
+				}
+			}
+			return new JarIndex(length, lastModified, indexed);
 		} catch (IOException e) {
-			TagLog.info("Failed to scan directory: {}", typeDir, e);
+			TagDiagnostics.report("Failed to read tag pack: {}", pack.toString(), pack.getFileName(), e);
+			return null;
 		}
 	}
 
-	private static void processConfigTagFile(Path file, String tagName, TagType type) {
-		try {
-			byte[] bytes = Files.readAllBytes(file);
-			var json = new String(bytes, StandardCharsets.UTF_8);
-			var jsonObject = GSON.fromJson(json, JsonObject.class);
-
-			if (jsonObject != null) {
-				processTagJson(jsonObject, tagName, type);
-			}
+	@Nullable
+	private static IndexedEntry processPackEntry(Path pack, ZipFile zip, PackEntry candidate) {
+		var entry = candidate.entry();
+		var entryName = entry.getName();
+		var source = pack + "!/" + entryName;
+		try (var input = zip.getInputStream(entry)) {
+			var definition = TagParser.parseStream(input, entryName, candidate.path().tagName(),
+					candidate.path().type(), TagDiagnostics.forSource(source));
+			return new IndexedEntry(entryName, entry.getSize(), entry.getCrc(), definition);
 		} catch (Exception e) {
-			TagLog.info("Failed to process {} tag file: {}", type.name().toLowerCase(), file, e);
+			TagDiagnostics.report("Failed to read tag entry from pack: {}", source, entryName, e);
+			return null;
 		}
 	}
 
-	private static void processTagJson(JsonObject jsonObject, String tagName, TagType type) {
-		if (jsonObject == null || !jsonObject.has("values") || !jsonObject.get("values").isJsonArray()) {
-			TagLog.info("Invalid JSON for tag {}: missing or invalid 'values' array", tagName);
-			return;
-		}
-
-		boolean replace = jsonObject.has("replace") && jsonObject.get("replace").isJsonPrimitive()
-				&& jsonObject.get("replace").getAsBoolean();
-
-		var operation = replace ? Operation.REPLACE : Operation.ADD;
-
-		switch (type) {
-			case ITEM -> processItemTag(tagName, operation, jsonObject);
-			case FLUID -> processFluidTag(tagName, operation, jsonObject);
-			case BLOCK -> processBlockTag(tagName, operation, jsonObject);
+	/**
+	 * Brings the config index up to date and returns the files in apply order.
+	 */
+	private static List<ConfigFile> indexConfigTags(Path rootDir, ReloadScope scope) {
+		if (!Files.exists(rootDir) || !Files.isDirectory(rootDir)) {
+			return Collections.emptyList();
 		}
-	}
 
-	private static void processItemTag(String tagName, Operation operation, JsonObject jsonObject) {
-		var valuesArray = jsonObject.getAsJsonArray("values");
-		if (valuesArray == null) {
-			return;
+		var tasks = new ObjectArrayList<Callable<ConfigFile>>();
+		for (var type : TagType.values()) {
+			var typeDir = rootDir.resolve(type.getName());
+			if (Files.exists(typeDir) && Files.isDirectory(typeDir)) {
+				scanConfigTypeDirectory(typeDir, type, scope, tasks);
+			}
 		}
 
-		Set<ItemEntry> entries = new HashSet<>();
-
-		for (var element : valuesArray) {
-			var entry = parseItemEntry(element);
-			if (entry != null) {
-				entries.add(entry);
+		var files = new ObjectArrayList<ConfigFile>(tasks.size());
+		var seen = new ObjectOpenHashSet<Path>(tasks.size());
+		for (var file : runAll(tasks)) {
+			if (file == null) {
+				continue;
 			}
-		}
 
-		if (operation == Operation.ADD) {
-			TagManager.registerItem(entries, tagName);
-		} else {
-			TagManager.replaceItem(entries, tagName);
+			CONFIG_INDEX.put(file.path(), file);
+			seen.add(file.path());
+			files.add(file);
 		}
+		CONFIG_INDEX.keySet().retainAll(seen);
+		return files;
 	}
 
-	private static void processFluidTag(String tagName, Operation operation, JsonObject jsonObject) {
-		var valuesArray = jsonObject.getAsJsonArray("values");
-		if (valuesArray == null) {
-			return;
-		}
-
-		Set<FluidEntry> entries = new HashSet<>();
-
-		for (var element : valuesArray) {
-			var entry = parseFluidEntry(element);
-			if (entry != null) {
-				entries.add(entry);
-			}
-		}
-
-		if (operation == Operation.ADD) {
-			TagManager.registerFluid(entries, tagName);
-		} else {
-			TagManager.replaceFluid(entries, tagName);
-		}
+	/**
+	 * Drops the cached definitions of a changed config tag file, or of every
+	 * file below a changed directory, so the next scan parses them again.
+	 */
+	public static void invalidateConfigFiles(@Nonnull Path changed) {
+		var absolute = changed.toAbsolutePath();
+		CONFIG_INDEX.keySet().removeIf(path -> path.startsWith(absolute));
+		INVALIDATED_PACKS.add(absolute);
 	}
 
-	private static void processBlockTag(String tagName, Operation operation, JsonObject jsonObject) {
-		var valuesArray = jsonObject.getAsJsonArray("values");
-		if (valuesArray == null) {
-			return;
-		}
+	private static void scanConfigTypeDirectory(Path typeDir, TagType type, ReloadScope scope,
+			List<Callable<ConfigFile>> tasks) {
+		try (var paths = Files.walk(typeDir, 3)) {
+			var iterator = paths.iterator();
+
+			while (iterator.hasNext()) {
+				var path = iterator.next();
 
-		Set<BlockEntry> entries = new HashSet<>();
+				if (Files.isRegularFile(path)) {
+					var fileName = path.getFileName().toString();
 
-		for (var element : valuesArray) {
-			var entry = parseBlockEntry(element);
-			if (entry != null) {
-				entries.add(entry);
+					if (TagParser.isConfigTagFile(fileName)) {
+						var relativePath = typeDir.relativize(path).toString().replace(File.separatorChar, '/');
+						var tagName = TagParser.convertPathToTagName(relativePath);
+
+						if (scope.isAll()) {
+							tasks.add(() -> loadConfigTagFile(path, tagName, type, false));
+						} else if (scope.matches(type, tagName, type.getName() + "/" + relativePath)) {
+							tasks.add(() -> loadConfigTagFile(path, tagName, type, true));
+						} else {
+							// Not read yet, e.g. the previous load came from the prebaked file
+							var previous = CONFIG_INDEX.get(path.toAbsolutePath());
+							tasks.add(previous != null ? () -> previous
+									: () -> loadConfigTagFile(path, tagName, type, false));
+						}
+					}
+				}
 			}
-		}
-
-		if (operation == Operation.ADD) {
-			TagManager.registerBlock(entries, tagName);
-		} else {
-			TagManager.replaceBlock(entries, tagName);
+		} catch (IOException e) {
+			TagDiagnostics.report("Failed to scan directory: {}", typeDir.toString(), typeDir, e);
 		}
 	}
 
+	/**
+	 * Returns the cached definition of a config tag file if its size and
+	 * modification time are unchanged and a reparse is not forced, otherwise
+	 * parses it again.
+	 */
 	@Nullable
-	private static ItemEntry parseItemEntry(JsonElement element) {
+	private static ConfigFile loadConfigTagFile(Path file, String tagName, TagType type, boolean force) {
+		var key = file.toAbsolutePath();
+		BasicFileAttributes attributes;
 		try {
-			if (element.isJsonObject()) {
-				var itemObj = element.getAsJsonObject();
-				if (!itemObj.has("id") || !itemObj.get("id").isJsonPrimitive()) {
-					return null;
-				}
-
-				var id = itemObj.get("id").getAsString();
-				int metadata = itemObj.has("metadata") && itemObj.get("metadata").isJsonPrimitive()
-						? itemObj.get("metadata").getAsInt()
-						: 0;
+			attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		} catch (IOException e) {
+			TagDiagnostics.report("Failed to process tag file: {}", file.toString(), file.getFileName(), e);
+			return null;
+		}
 
-				return TagEntry.item(id, metadata);
-			} else if (element.isJsonPrimitive()) {
-				var value = element.getAsString();
-				return TagEntry.item(value);
-			}
-		} catch (Exception e) {
-			TagLog.info("Failed to parse item entry: {}", element, e);
+		long size = attributes.size();
+		long lastModified = attributes.lastModifiedTime().toMillis();
+		var previous = CONFIG_INDEX.get(key);
+		if (!force && previous != null && previous.size() == size && previous.lastModified() == lastModified) {
+			return previous;
 		}
-		return null;
+		return new ConfigFile(key, size, lastModified, processConfigTagFile(file, tagName, type));
 	}
 
 	@Nullable
-	private static FluidEntry parseFluidEntry(JsonElement element) {
+	private static TagDefinition processConfigTagFile(Path file, String tagName, TagType type) {
 		try {
-			if (element.isJsonPrimitive()) {
-				var value = element.getAsString();
-				return TagEntry.fluid(value);
-			}
+			return TagParser.parseFile(file, tagName, type, TagDiagnostics.forSource(file.toString()));
 		} catch (Exception e) {
-			TagLog.info("Failed to parse fluid entry: {}", element, e);
+			TagDiagnostics.report("Failed to process tag file: {}", file.toString(), file.getFileName(), e);
+			return null;
 		}
-		return null;
 	}
 
-	@Nullable
-	private static BlockEntry parseBlockEntry(JsonElement element) {
-		try {
-			if (element.isJsonPrimitive()) {
-				var value = element.getAsString();
-				return TagEntry.block(value);
-			}
-		} catch (Exception e) {
-			TagLog.info("Failed to parse block entry: {}", element, e);
+	/**
+	 * Hands a definition to {@link TagSources}, unless the source still has
+	 * the definition it had in the previous load.
+	 */
+	private static void addSource(String id, TagDefinition definition) {
+		if (!TagSources.reuse(id, definition)) {
+			TagSources.add(id, definition, Collections.singletonList(contribution(definition)));
 		}
-		return null;
 	}
 
-	@Nonnull
-	private static String buildTagNameFromPath(String fileName, String[] parts) {
-		var tagName = fileName.substring(0, fileName.length() - 5);
-
-		if (parts.length > 4) {
-			var namespace = parts[3];
-			var subPath = new StringBuilder();
-
-			for (int i = 4; i < parts.length - 1; i++) {
-				if (subPath.length() > 0) {
-					subPath.append("/");
-				}
-				subPath.append(parts[i]);
-			}
-
-			if (subPath.length() > 0) {
-				return namespace + ":" + subPath + "/" + tagName;
-			} else {
-				return namespace + ":" + tagName;
-			}
-		}
+	/**
+	 * The tag entries of one jar or tag pack, valid while the archive keeps its
+	 * length and modification time.
+	 */
+	@Desugar
+	private record JarIndex(long length, long lastModified, List<IndexedEntry> entries) {
+	}
 
-		return tagName;
+	/**
+	 * A tag entry as listed in the archive's central directory, with its parsed
+	 * definition (null if it failed to parse).
+	 */
+	@Desugar
+	private record IndexedEntry(String name, long size, long crc, @Nullable TagDefinition definition) {
 	}
 
-	private static String convertPathToTagName(String relativePath) {
-		var parts = relativePath.substring(0, relativePath.length() - 5).split("/");
-		return parts.length == 1
-				? parts[0]
-				: parts[0] + ":" + String.join("/", Arrays.copyOfRange(parts, 1, parts.length));
+	/**
+	 * A config tag file as of its last scan, with its parsed definition (null
+	 * if it failed to parse).
+	 */
+	@Desugar
+	private record ConfigFile(Path path, long size, long lastModified, @Nullable TagDefinition definition) {
 	}
 
-	private static boolean isValidJsonFileName(String fileName) {
-		return VALID_FILENAME_PATTERN.matcher(fileName).matches();
+	@Desugar
+	private record PackEntry(ZipEntry entry, TagParser.JarTagPath path) {
 	}
 
 	@Desugar
-	private record JarTagData(String tagName, TagType type, JsonObject jsonObject) {
+	private record FileStamp(long size, long lastModified) {
 	}
 }
@@ -3,10 +3,35 @@ package com.gardenevery.vintagetag;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+/**
+ * The mod's logger. The fixed arity overloads allocate nothing when their
+ * level is disabled; check {@link #isDebugEnabled()} before building costly
+ * arguments.
+ */
 final class TagLog {
 	private static final Logger LOGGER = LogManager.getLogger("VintageTag");
 
+	public static boolean isDebugEnabled() {
+		return LOGGER.isDebugEnabled();
+	}
+
+	public static void debug(String message, Object param) {
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug(message, param);
+		}
+	}
+
+	public static void debug(String message, Object param0, Object param1) {
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug(message, param0, param1);
+		}
+	}
+
 	public static void info(String message, Object... params) {
 		LOGGER.info(message, params);
 	}
+
+	public static void warn(String message, Object... params) {
+		LOGGER.warn(message, params);
+	}
 }
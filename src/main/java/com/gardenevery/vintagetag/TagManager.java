@@ -7,13 +7,13 @@ import com.gardenevery.vintagetag.Tag.MutableTagContainer;
 import com.gardenevery.vintagetag.TagEntry.BlockEntry;
 import com.gardenevery.vintagetag.TagEntry.FluidEntry;
 import com.gardenevery.vintagetag.TagEntry.ItemEntry;
-
-import net.minecraftforge.common.MinecraftForge;
+import com.github.bsideup.jabel.Desugar;
 
 final class TagManager {
 	private static volatile Tag<ItemEntry> ITEM_TAG_SNAPSHOT = new Tag<>();
 	private static volatile Tag<FluidEntry> FLUID_TAG_SNAPSHOT = new Tag<>();
 	private static volatile Tag<BlockEntry> BLOCK_TAG_SNAPSHOT = new Tag<>();
+	private static volatile OreNameIndex ORE_NAMES = OreNameIndex.EMPTY;
 
 	private static final MutableTagContainer<ItemEntry> ITEM_TAG_CONTAINER = new MutableTagContainer<>();
 	private static final MutableTagContainer<FluidEntry> FLUID_TAG_CONTAINER = new MutableTagContainer<>();
@@ -34,6 +34,14 @@ final class TagManager {
 		return BLOCK_TAG_SNAPSHOT;
 	}
 
+	/**
+	 * The ore names of the published item snapshot.
+	 */
+	@Nonnull
+	public static OreNameIndex oreNames() {
+		return ORE_NAMES;
+	}
+
 	public static void registerItem(@Nonnull Set<ItemEntry> entry, @Nonnull String tagName) {
 		ITEM_TAG_CONTAINER.register(entry, tagName);
 	}
@@ -65,18 +73,69 @@ final class TagManager {
 	}
 
 	public static void bake() {
-		final var newItemSnapshot = ITEM_TAG_CONTAINER.build();
-		final var newFluidSnapshot = FLUID_TAG_CONTAINER.build();
-		final var newBlockSnapshot = BLOCK_TAG_CONTAINER.build();
+		publish(build());
+	}
 
-		ITEM_TAG_SNAPSHOT = newItemSnapshot;
-		FLUID_TAG_SNAPSHOT = newFluidSnapshot;
-		BLOCK_TAG_SNAPSHOT = newBlockSnapshot;
+	/**
+	 * Builds snapshots from the registered containers, without publishing. The
+	 * containers keep their content, so the next load only has to apply what
+	 * changed (see {@link TagSources}). Safe to call off the main thread as long
+	 * as only one thread registers into the containers at a time.
+	 */
+	@Nonnull
+	public static Snapshot build() {
+		final var newItemSnapshot = build(ITEM_TAG_CONTAINER, TagType.ITEM);
+		final var newFluidSnapshot = build(FLUID_TAG_CONTAINER, TagType.FLUID);
+		final var newBlockSnapshot = build(BLOCK_TAG_CONTAINER, TagType.BLOCK);
 
-		ITEM_TAG_CONTAINER.clear();
-		FLUID_TAG_CONTAINER.clear();
-		BLOCK_TAG_CONTAINER.clear();
+		return new Snapshot(newItemSnapshot, newFluidSnapshot, newBlockSnapshot);
+	}
+
+	@Nonnull
+	private static <T extends TagEntry> Tag<T> build(MutableTagContainer<T> container, TagType type) {
+		try (var ignored = TagProfiler.section("build " + type.getName())) {
+			return container.build();
+		}
+	}
+
+	/**
+	 * Swaps in previously built snapshots and fires {@link TagEvent}. Must be
+	 * called on the main thread.
+	 */
+	public static void publish(@Nonnull Snapshot snapshot) {
+		ITEM_TAG_SNAPSHOT.retire();
+		FLUID_TAG_SNAPSHOT.retire();
+		BLOCK_TAG_SNAPSHOT.retire();
+
+		ITEM_TAG_SNAPSHOT = snapshot.item();
+		FLUID_TAG_SNAPSHOT = snapshot.fluid();
+		BLOCK_TAG_SNAPSHOT = snapshot.block();
+		ORE_NAMES = snapshot.oreNames();
+
+		try (var ignored = TagProfiler.section("publish")) {
+			TagProfiler.post(new TagEvent());
+		}
+	}
 
-		MinecraftForge.EVENT_BUS.post(new TagEvent());
+	/**
+	 * Built snapshots of all three tag types and the ore name index of the
+	 * item snapshot.
+	 */
+	@Desugar
+	public record Snapshot(Tag<ItemEntry> item, Tag<FluidEntry> fluid, Tag<BlockEntry> block,
+			OreNameIndex oreNames) {
+		/**
+		 * Also builds the ore name index, so call it on the thread that builds
+		 * the snapshot rather than on the one that publishes it.
+		 */
+		public Snapshot(Tag<ItemEntry> item, Tag<FluidEntry> fluid, Tag<BlockEntry> block) {
+			this(item, fluid, block, buildOreNames(item));
+		}
+
+		private static OreNameIndex buildOreNames(Tag<ItemEntry> item) {
+			try (var ignored = TagProfiler.section("ore names")) {
+				return OreNameIndex.build(item);
+			}
+		}
 	}
 }
@@ -0,0 +1,643 @@
+package com.gardenevery.vintagetag;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.github.bsideup.jabel.Desugar;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+/**
+ * Registry independent part of tag loading: turns tag file paths into tag
+ * names and tag JSON into {@link TagDefinition}s whose values are still plain
+ * IDs. Nothing in here touches Minecraft or Forge classes, so it can be used
+ * by {@link TagCompiler} outside the game.
+ * <p>
+ * Besides JSON, config tags may use the bulk format ({@code .tagbin}), meant
+ * for generated tags with very many values. It is UTF-8 text with one value
+ * per line:
+ *
+ * <pre>
+ * // comment
+ * &#64;replace
+ * minecraft:wool 14
+ * minecraft:stone
+ * #minecraft:logs
+ * </pre>
+ *
+ * An optional {@code @replace} line has the same effect as
+ * {@code "replace": true}. Each other line is an ID or a {@code #} tag
+ * reference, for items optionally followed by whitespace and the metadata.
+ * Bulk files are memory mapped and decoded from the mapped bytes; an ID that
+ * was seen before is looked up by its bytes, so it costs no new String.
+ * <p>
+ * In both formats item metadata may also be a range such as {@code 0-15}, or
+ * {@code *} for every metadata.
+ */
+final class TagParser {
+	static final String JSON_EXTENSION = ".json";
+	static final String BULK_EXTENSION = ".tagbin";
+	static final String PACK_EXTENSION = ".zip";
+	// Highest item metadata, also the ore dictionary's wildcard
+	static final int MAX_METADATA = Short.MAX_VALUE;
+
+	// Shared by the parse workers, see intern
+	private static final Map<String, String> IDS = new ConcurrentHashMap<>();
+	// The same IDs keyed by their UTF-8 bytes, for the bulk format
+	private static final Map<IdBytes, String> ID_BYTES = new ConcurrentHashMap<>();
+
+	private static final Pattern VALID_FILENAME_PATTERN = Pattern.compile("^[a-zA-Z0-9_]+\\.json$",
+			Pattern.CASE_INSENSITIVE);
+
+	/**
+	 * Receives problems found while parsing, e.g. to log them or collect them
+	 * into a report.
+	 */
+	@FunctionalInterface
+	interface Problems {
+		void report(@Nonnull String message, @Nullable Object subject, @Nullable Exception exception);
+	}
+
+	/**
+	 * Maps a jar entry such as {@code data/tags/item/a/b.json} to its tag type
+	 * and name, or returns null if the entry is not a loadable tag file.
+	 */
+	@Nullable
+	static JarTagPath parseJarPath(@Nonnull String entryName) {
+		var parts = entryName.split("/");
+
+		if (parts.length < 4) {
+			return null;
+		}
+
+		var tagType = TagType.getType(parts[2]);
+		if (tagType == null) {
+			return null;
+		}
+
+		var fileName = parts[parts.length - 1];
+		if (!isValidJsonFileName(fileName)) {
+			return null;
+		}
+
+		if (parts.length - 4 > 3) {
+			return null;
+		}
+
+		return new JarTagPath(tagType, buildTagNameFromPath(fileName, parts));
+	}
+
+	/**
+	 * Returns the canonical instance of an ID. Parsed definitions are cached
+	 * across reloads and the same IDs appear in many files, so they share one
+	 * string each.
+	 */
+	@Nonnull
+	static String intern(@Nonnull String id) {
+		var existing = IDS.putIfAbsent(id, id);
+		return existing != null ? existing : id;
+	}
+
+	static boolean isConfigTagFile(@Nonnull String fileName) {
+		return fileName.endsWith(JSON_EXTENSION) || fileName.endsWith(BULK_EXTENSION);
+	}
+
+	static boolean isTagPack(@Nonnull String fileName) {
+		return fileName.endsWith(PACK_EXTENSION);
+	}
+
+	/**
+	 * Maps an entry of a tag pack, laid out like {@code config/tags/} (e.g.
+	 * {@code item/a/b.json}), to its tag type and name. Returns null if the
+	 * entry is not a config tag file or is nested too deeply.
+	 */
+	@Nullable
+	static JarTagPath parsePackPath(@Nonnull String entryName) {
+		int slash = entryName.indexOf('/');
+		if (slash < 0 || !isConfigTagFile(entryName)) {
+			return null;
+		}
+
+		var type = TagType.getType(entryName.substring(0, slash));
+		var relativePath = entryName.substring(slash + 1);
+		if (type == null || relativePath.split("/").length > 3) {
+			return null;
+		}
+		return new JarTagPath(type, convertPathToTagName(relativePath));
+	}
+
+	/**
+	 * Maps a path relative to {@code config/tags/{type}/} to its tag name.
+	 */
+	@Nonnull
+	static String convertPathToTagName(@Nonnull String relativePath) {
+		var parts = relativePath.substring(0, relativePath.lastIndexOf('.')).split("/");
+		return parts.length == 1
+				? parts[0]
+				: parts[0] + ":" + String.join("/", Arrays.copyOfRange(parts, 1, parts.length));
+	}
+
+	/**
+	 * Parses a config tag file in either format.
+	 */
+	@Nullable
+	static TagDefinition parseFile(@Nonnull Path file, @Nonnull String tagName, @Nonnull TagType type,
+			@Nonnull Problems problems) throws IOException {
+		if (!file.getFileName().toString().endsWith(BULK_EXTENSION)) {
+			try (var reader = new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8)) {
+				return parse(reader, tagName, type, problems);
+			}
+		}
+
+		try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Bulk tag file too large: " + file);
+			}
+
+			return parseBulk(channel.map(FileChannel.MapMode.READ_ONLY, 0, size), tagName, type, problems);
+		}
+	}
+
+	/**
+	 * Parses a config tag file read from a stream, such as an entry of a tag
+	 * pack; the format is taken from the file name.
+	 */
+	@Nullable
+	static TagDefinition parseStream(@Nonnull InputStream input, @Nonnull String fileName, @Nonnull String tagName,
+			@Nonnull TagType type, @Nonnull Problems problems) throws IOException {
+		if (fileName.endsWith(BULK_EXTENSION)) {
+			return parseBulk(ByteBuffer.wrap(readAll(input)), tagName, type, problems);
+		}
+		return parse(new InputStreamReader(input, StandardCharsets.UTF_8), tagName, type, problems);
+	}
+
+	/**
+	 * Reads the rest of the stream. Kept free of Guava, so that
+	 * {@link TagCompiler} runs with only Gson and fastutil on the classpath.
+	 */
+	private static byte[] readAll(InputStream input) throws IOException {
+		var out = new ByteArrayOutputStream();
+		var buffer = new byte[8192];
+		int read;
+		while ((read = input.read(buffer)) != -1) {
+			out.write(buffer, 0, read);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decodes a bulk tag file directly from the buffer. IDs are resolved from
+	 * their bytes to the interned String (see {@link #intern}), so only an ID
+	 * seen for the first time becomes a new String; metadata is parsed from
+	 * the raw bytes.
+	 */
+	@Nonnull
+	static TagDefinition parseBulk(@Nonnull ByteBuffer buffer, @Nonnull String tagName, @Nonnull TagType type,
+			@Nonnull Problems problems) {
+		var values = new ObjectArrayList<RawEntry>();
+		var probe = new IdBytes(new byte[256], 0, 0);
+		boolean replace = false;
+		int line = 0;
+
+		int limit = buffer.limit();
+		int position = buffer.position();
+		while (position < limit) {
+			line++;
+			int end = position;
+			while (end < limit && buffer.get(end) != '\n') {
+				end++;
+			}
+			int next = end + 1;
+
+			int start = skipWhitespace(buffer, position, end);
+			while (end > start && isWhitespace(buffer.get(end - 1))) {
+				end--;
+			}
+			position = next;
+
+			if (start == end || (end - start >= 2 && buffer.get(start) == '/' && buffer.get(start + 1) == '/')) {
+				continue;
+			}
+
+			int idEnd = start;
+			while (idEnd < end && !isWhitespace(buffer.get(idEnd))) {
+				idEnd++;
+			}
+
+			int length = idEnd - start;
+			if (length == 8 && matches(buffer, start, "@replace")) {
+				replace = true;
+				continue;
+			}
+
+			var id = internBytes(buffer, start, length, probe);
+
+			int metadata = 0;
+			int maxMetadata = 0;
+			int metaStart = skipWhitespace(buffer, idEnd, end);
+			if (metaStart < end && type == TagType.ITEM) {
+				int dash = metaStart + 1;
+				while (dash < end && buffer.get(dash) != '-') {
+					dash++;
+				}
+
+				long min;
+				long max;
+				if (end - metaStart == 1 && buffer.get(metaStart) == '*') {
+					min = 0;
+					max = MAX_METADATA;
+				} else if (dash < end) {
+					min = parseInt(buffer, metaStart, dash);
+					max = parseInt(buffer, dash + 1, end);
+					if (min < 0 || min > max || max > MAX_METADATA) {
+						min = Long.MIN_VALUE;
+					}
+				} else {
+					min = max = parseInt(buffer, metaStart, end);
+				}
+
+				if (min == Long.MIN_VALUE || max == Long.MIN_VALUE) {
+					problems.report("Invalid metadata in bulk tag {}", tagName + " line " + line, null);
+					continue;
+				}
+				metadata = (int) min;
+				maxMetadata = (int) max;
+			}
+
+			values.add(new RawEntry(id, metadata, maxMetadata));
+		}
+
+		values.trim();
+		return new TagDefinition(tagName, type, replace, values);
+	}
+
+	/**
+	 * The interned ID whose UTF-8 bytes are [start, start + length) of the
+	 * buffer. The bytes are copied into the probe, which is reused for every
+	 * line of a file.
+	 */
+	private static String internBytes(ByteBuffer buffer, int start, int length, IdBytes probe) {
+		if (length > probe.bytes.length) {
+			probe.bytes = new byte[Math.max(length, probe.bytes.length * 2)];
+		}
+		int hash = 1;
+		for (int i = 0; i < length; i++) {
+			byte b = buffer.get(start + i);
+			probe.bytes[i] = b;
+			hash = 31 * hash + b;
+		}
+		probe.length = length;
+		probe.hash = hash;
+
+		var id = ID_BYTES.get(probe);
+		if (id == null) {
+			id = intern(new String(probe.bytes, 0, length, StandardCharsets.UTF_8));
+			var existing = ID_BYTES.putIfAbsent(new IdBytes(Arrays.copyOf(probe.bytes, length), length, hash), id);
+			if (existing != null) {
+				id = existing;
+			}
+		}
+		return id;
+	}
+
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r';
+	}
+
+	private static int skipWhitespace(ByteBuffer buffer, int from, int to) {
+		while (from < to && isWhitespace(buffer.get(from))) {
+			from++;
+		}
+		return from;
+	}
+
+	private static boolean matches(ByteBuffer buffer, int start, String ascii) {
+		for (int i = 0; i < ascii.length(); i++) {
+			if (buffer.get(start + i) != ascii.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Parses a decimal int spanning exactly [from, to), or returns
+	 * {@link Long#MIN_VALUE} if the bytes are not one.
+	 */
+	private static long parseInt(ByteBuffer buffer, int from, int to) {
+		if (from >= to) {
+			return Long.MIN_VALUE;
+		}
+
+		boolean negative = buffer.get(from) == '-';
+		int i = negative ? from + 1 : from;
+		if (i == to || to - i > 10) {
+			return Long.MIN_VALUE;
+		}
+
+		long value = 0;
+		for (; i < to; i++) {
+			int digit = buffer.get(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return Long.MIN_VALUE;
+			}
+			value = value * 10 + digit;
+		}
+
+		value = negative ? -value : value;
+		return value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ? Long.MIN_VALUE : value;
+	}
+
+	/**
+	 * Streams a tag file straight from the reader into a definition, without
+	 * building a JSON tree or holding the whole file as a String. Returns null
+	 * for an empty or invalid file.
+	 */
+	@Nullable
+	static TagDefinition parse(@Nonnull Reader input, @Nonnull String tagName, @Nonnull TagType type,
+			@Nonnull Problems problems) throws IOException {
+		var reader = new JsonReader(input);
+		reader.setLenient(true);
+
+		try {
+			if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+				problems.report("Invalid JSON for tag {}: expected an object", tagName, null);
+				return null;
+			}
+		} catch (EOFException e) {
+			return null;
+		}
+
+		boolean replace = false;
+		ObjectArrayList<RawEntry> values = null;
+
+		try {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				switch (reader.nextName()) {
+					case "replace" -> replace = readBoolean(reader);
+					case "values" -> {
+						if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+							reader.skipValue();
+							continue;
+						}
+
+						values = new ObjectArrayList<>();
+						reader.beginArray();
+						while (reader.hasNext()) {
+							var entry = type == TagType.ITEM ? parseItemEntry(reader, problems) : parseNameEntry(reader);
+							if (entry != null) {
+								values.add(entry);
+							}
+						}
+						reader.endArray();
+					}
+					default -> reader.skipValue();
+				}
+			}
+			reader.endObject();
+		} catch (IllegalStateException | NumberFormatException e) {
+			throw new IOException("Malformed tag JSON for " + tagName, e);
+		}
+
+		if (values == null) {
+			problems.report("Invalid JSON for tag {}: missing or invalid 'values' array", tagName, null);
+			return null;
+		}
+
+		values.trim();
+		return new TagDefinition(tagName, type, replace, values);
+	}
+
+	private static boolean readBoolean(JsonReader reader) throws IOException {
+		return switch (reader.peek()) {
+			case BOOLEAN -> reader.nextBoolean();
+			case STRING, NUMBER -> Boolean.parseBoolean(reader.nextString());
+			default -> {
+				reader.skipValue();
+				yield false;
+			}
+		};
+	}
+
+	/**
+	 * Accepts "mod:name" or { "id": "mod:name", "metadata": int }. Anything
+	 * else is skipped.
+	 */
+	@Nullable
+	private static RawEntry parseItemEntry(JsonReader reader, Problems problems) throws IOException {
+		switch (reader.peek()) {
+			case STRING, NUMBER, BOOLEAN -> {
+				var id = readPrimitive(reader);
+				return id == null ? null : new RawEntry(intern(id), 0);
+			}
+			case BEGIN_OBJECT -> {
+				String id = null;
+				int metadata = 0;
+				int maxMetadata = 0;
+				String invalidMetadata = null;
+
+				reader.beginObject();
+				while (reader.hasNext()) {
+					switch (reader.nextName()) {
+						case "id" -> id = readPrimitive(reader);
+						case "metadata" -> {
+							var raw = readPrimitive(reader);
+							if (raw != null) {
+								var range = parseMetadata(raw.trim());
+								if (range != null) {
+									metadata = (int) (range >> 32);
+									maxMetadata = (int) range.longValue();
+								} else {
+									invalidMetadata = raw;
+								}
+							}
+						}
+						default -> reader.skipValue();
+					}
+				}
+				reader.endObject();
+
+				if (id == null) {
+					return null;
+				}
+				if (invalidMetadata != null) {
+					problems.report("Failed to parse item entry: {}", id + " (metadata " + invalidMetadata + ")",
+							null);
+					return null;
+				}
+				return new RawEntry(intern(id), metadata, maxMetadata);
+			}
+			default -> {
+				reader.skipValue();
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Parses an int, "*" for every metadata or a range "min-max", packed as
+	 * min in the high and max in the low half; null if invalid.
+	 */
+	@Nullable
+	static Long parseMetadata(String raw) {
+		try {
+			if (raw.equals("*")) {
+				return pack(0, MAX_METADATA);
+			}
+
+			int dash = raw.indexOf('-', 1);
+			if (dash < 0) {
+				int metadata = raw.indexOf('.') >= 0 ? (int) Double.parseDouble(raw) : Integer.parseInt(raw);
+				return pack(metadata, metadata);
+			}
+
+			int min = Integer.parseInt(raw.substring(0, dash).trim());
+			int max = Integer.parseInt(raw.substring(dash + 1).trim());
+			return min < 0 || min > max || max > MAX_METADATA ? null : pack(min, max);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	private static long pack(int min, int max) {
+		return ((long) min << 32) | (max & 0xFFFFFFFFL);
+	}
+
+	@Nullable
+	private static RawEntry parseNameEntry(JsonReader reader) throws IOException {
+		var id = readPrimitive(reader);
+		return id == null ? null : new RawEntry(intern(id), 0);
+	}
+
+	/**
+	 * Returns a string, number or boolean value as a string and skips any
+	 * other value.
+	 */
+	@Nullable
+	private static String readPrimitive(JsonReader reader) throws IOException {
+		var token = reader.peek();
+		if (token == JsonToken.STRING || token == JsonToken.NUMBER || token == JsonToken.BOOLEAN) {
+			return token == JsonToken.BOOLEAN ? Boolean.toString(reader.nextBoolean()) : reader.nextString();
+		}
+		reader.skipValue();
+		return null;
+	}
+
+	@Nonnull
+	private static String buildTagNameFromPath(String fileName, String[] parts) {
+		var tagName = fileName.substring(0, fileName.length() - 5);
+
+		if (parts.length > 4) {
+			var namespace = parts[3];
+			var subPath = new StringBuilder();
+
+			for (int i = 4; i < parts.length - 1; i++) {
+				if (subPath.length() > 0) {
+					subPath.append("/");
+				}
+				subPath.append(parts[i]);
+			}
+
+			if (subPath.length() > 0) {
+				return namespace + ":" + subPath + "/" + tagName;
+			} else {
+				return namespace + ":" + tagName;
+			}
+		}
+
+		return tagName;
+	}
+
+	private static boolean isValidJsonFileName(String fileName) {
+		return VALID_FILENAME_PATTERN.matcher(fileName).matches();
+	}
+
+	/**
+	 * Key of {@link #ID_BYTES}. Stored keys own an exact copy of the bytes;
+	 * a lookup probe is mutable and only looked at during the lookup.
+	 */
+	private static final class IdBytes {
+		private byte[] bytes;
+		private int length;
+		private int hash;
+
+		private IdBytes(byte[] bytes, int length, int hash) {
+			this.bytes = bytes;
+			this.length = length;
+			this.hash = hash;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (!(o instanceof IdBytes other) || other.length != length || other.hash != hash) {
+				return false;
+			}
+			for (int i = 0; i < length; i++) {
+				if (bytes[i] != other.bytes[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	@Desugar
+	record JarTagPath(TagType type, String tagName) {
+	}
+
+	/**
+	 * A parsed tag file. Values are unresolved IDs; a leading {@code #} marks a
+	 * reference to another tag.
+	 */
+	@Desugar
+	record TagDefinition(String tagName, TagType type, boolean replace, List<RawEntry> values) {
+	}
+
+	/**
+	 * An ID with, for items, the metadata range {@code metadata} to
+	 * {@code maxMetadata}; both are equal for a single metadata.
+	 */
+	@Desugar
+	record RawEntry(String id, int metadata, int maxMetadata) {
+		RawEntry(String id, int metadata) {
+			this(id, metadata, metadata);
+		}
+
+		public boolean isRange() {
+			return maxMetadata != metadata;
+		}
+
+		public boolean isTag() {
+			return id.startsWith("#");
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package com.gardenevery.vintagetag;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import javax.annotation.Nonnull;
+
+import com.github.bsideup.jabel.Desugar;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+/**
+ * A tag value that stands for every registry name it matches:
+ * <p>
+ * {@code "minecraft:*_wool"} is a glob; {@code *} matches any run of
+ * characters and {@code ?} a single one. Like plain IDs it is lowercased and
+ * defaults to the minecraft namespace for items and blocks.
+ * <p>
+ * {@code "#regex:thermal:.*_gear"} is a Java regular expression that has to
+ * match the whole name.
+ * <p>
+ * Patterns are matched against a sorted array of registry names. The literal
+ * text in front of the first wildcard narrows the search to one range of that
+ * array, so a pattern like {@code "thermal:*"} only looks at thermal's names.
+ * Registry independent, shared by {@link TagResolver} and {@link TagCompiler}.
+ */
+@Desugar
+record TagPattern(String prefix, Pattern pattern) {
+	static final String REGEX_PREFIX = "#regex:";
+
+	public static boolean isPattern(@Nonnull String id) {
+		return id.startsWith(REGEX_PREFIX)
+				|| (!id.startsWith("#") && (id.indexOf('*') >= 0 || id.indexOf('?') >= 0));
+	}
+
+	/**
+	 * @param namespaced whether names are resource locations, i.e. not fluids
+	 * @throws java.util.regex.PatternSyntaxException if a regex is invalid
+	 */
+	@Nonnull
+	public static TagPattern compile(@Nonnull String id, boolean namespaced) {
+		if (id.startsWith(REGEX_PREFIX)) {
+			var regex = id.substring(REGEX_PREFIX.length()).trim();
+			return new TagPattern(literalPrefix(regex), Pattern.compile(regex));
+		}
+
+		var glob = id.trim();
+		if (namespaced) {
+			glob = glob.toLowerCase(Locale.ROOT);
+			if (glob.indexOf(':') < 0) {
+				glob = "minecraft:" + glob;
+			}
+		}
+
+		var regex = new StringBuilder();
+		int literal = 0;
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if (c == '*' || c == '?') {
+				if (literal < i) {
+					regex.append(Pattern.quote(glob.substring(literal, i)));
+				}
+				regex.append(c == '*' ? ".*" : ".");
+				literal = i + 1;
+			}
+		}
+		if (literal < glob.length()) {
+			regex.append(Pattern.quote(glob.substring(literal)));
+		}
+
+		int wildcard = 0;
+		while (wildcard < glob.length() && glob.charAt(wildcard) != '*' && glob.charAt(wildcard) != '?') {
+			wildcard++;
+		}
+		return new TagPattern(glob.substring(0, wildcard), Pattern.compile(regex.toString()));
+	}
+
+	/**
+	 * Returns the names matching this pattern, in array order.
+	 *
+	 * @param sortedNames registry names in natural order
+	 */
+	@Nonnull
+	public List<String> match(@Nonnull String[] sortedNames) {
+		int start = Arrays.binarySearch(sortedNames, prefix);
+		if (start < 0) {
+			start = -start - 1;
+		}
+
+		var matches = new ObjectArrayList<String>();
+		for (int i = start; i < sortedNames.length && sortedNames[i].startsWith(prefix); i++) {
+			if (pattern.matcher(sortedNames[i]).matches()) {
+				matches.add(sortedNames[i]);
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * The text every match of the regex has to start with, or "" if that is
+	 * not obvious from its leading characters.
+	 */
+	private static String literalPrefix(String regex) {
+		if (regex.indexOf('|') >= 0) {
+			return "";
+		}
+
+		int end = 0;
+		while (end < regex.length() && "\\.[]{}()*+?^$".indexOf(regex.charAt(end)) < 0) {
+			end++;
+		}
+
+		// A quantifier makes the character in front of it optional
+		if (end > 0 && end < regex.length() && "*?{".indexOf(regex.charAt(end)) >= 0) {
+			end--;
+		}
+		return regex.substring(0, end);
+	}
+}
@@ -0,0 +1,338 @@
+package com.gardenevery.vintagetag;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.util.Comparator;
+import java.util.List;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.github.bsideup.jabel.Desugar;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.fml.common.eventhandler.Event;
+import net.minecraftforge.fml.common.eventhandler.EventBus;
+import net.minecraftforge.fml.common.eventhandler.EventPriority;
+import net.minecraftforge.fml.common.eventhandler.IEventExceptionHandler;
+import net.minecraftforge.fml.common.eventhandler.IEventListener;
+
+/**
+ * Records per-phase wall time and allocated bytes of a tag load.
+ * <p>
+ * A session spans one pass through the pipeline, from the first scan to the
+ * network sync. {@link #begin()} starts one and {@link #finish(Session)} ends
+ * exactly that one, so a reload that starts while the previous one is still
+ * being published keeps its own report. A thread records into a session while
+ * it is bound with {@link #bind(Session)}; phases are opened with
+ * {@link #section(String)} and may be nested, with the nesting tracked per
+ * thread. While a session is bound, {@link #post(Event)} dispatches the
+ * {@link TagEvent} listeners one by one like the Forge bus does, so the
+ * slowest of them show up in the report.
+ */
+final class TagProfiler {
+	private static final int SLOWEST_LISTENERS = 5;
+	private static final Section NOOP = new Section(null, null);
+
+	@Nullable
+	private static final com.sun.management.ThreadMXBean THREAD_BEAN = findThreadBean();
+	private static final int EVENT_BUS_ID = findBusId();
+	@Nullable
+	private static final Field EXCEPTION_HANDLER = findBusField("exceptionHandler");
+	@Nullable
+	private static final Field SHUTDOWN = findBusField("shutdown");
+
+	// The session the current thread records into
+	private static final ThreadLocal<Binding> BOUND = new ThreadLocal<>();
+	@Nullable
+	private static volatile Report lastReport;
+
+	/**
+	 * Starts a session, or returns null if profiling is off. Nothing is
+	 * recorded until a thread binds it.
+	 */
+	@Nullable
+	public static Session begin() {
+		return TagConfig.enableProfiler ? new Session(System.nanoTime()) : null;
+	}
+
+	/**
+	 * Makes the calling thread record into the session until the returned
+	 * binding is closed. Use with try-with-resources.
+	 */
+	@Nonnull
+	public static Binding bind(@Nullable Session session) {
+		var binding = new Binding(session, BOUND.get());
+		BOUND.set(binding);
+		return binding;
+	}
+
+	/**
+	 * Opens a phase in the session bound to the calling thread. Use with
+	 * try-with-resources, the phase ends when the returned section is closed.
+	 */
+	@Nonnull
+	public static Section section(@Nonnull String name) {
+		var binding = BOUND.get();
+		if (binding == null || binding.session == null) {
+			return NOOP;
+		}
+		return new Section(binding, binding.session.open(name, binding.depth++));
+	}
+
+	/**
+	 * Posts the event on the Forge bus. While a session is bound, its
+	 * listeners are invoked one at a time and timed; a bus that is shut down
+	 * skips them and an exception goes to the bus's exception handler, exactly
+	 * as in {@link EventBus#post(Event)}.
+	 */
+	public static void post(@Nonnull Event event) {
+		var binding = BOUND.get();
+		if (binding == null || binding.session == null || EVENT_BUS_ID < 0 || EXCEPTION_HANDLER == null
+				|| SHUTDOWN == null) {
+			MinecraftForge.EVENT_BUS.post(event);
+			return;
+		}
+
+		IEventExceptionHandler handler;
+		try {
+			if (SHUTDOWN.getBoolean(MinecraftForge.EVENT_BUS)) {
+				return;
+			}
+			handler = (IEventExceptionHandler) EXCEPTION_HANDLER.get(MinecraftForge.EVENT_BUS);
+		} catch (IllegalAccessException e) {
+			MinecraftForge.EVENT_BUS.post(event);
+			return;
+		}
+
+		var listeners = event.getListenerList().getListeners(EVENT_BUS_ID);
+		int index = 0;
+		try {
+			for (; index < listeners.length; index++) {
+				var listener = listeners[index];
+				if (listener instanceof EventPriority) {
+					listener.invoke(event);
+					continue;
+				}
+
+				long start = System.nanoTime();
+				listener.invoke(event);
+				binding.session.listener(listener.toString(), System.nanoTime() - start);
+			}
+		} catch (Throwable throwable) {
+			handler.handleException(MinecraftForge.EVENT_BUS, event, listeners, index, throwable);
+			if (throwable instanceof RuntimeException e) {
+				throw e;
+			}
+			if (throwable instanceof Error e) {
+				throw e;
+			}
+			throw new RuntimeException(throwable);
+		}
+	}
+
+	/**
+	 * Ends the session, logs the breakdown and keeps it for
+	 * {@code /tag profile}.
+	 */
+	public static void finish(@Nullable Session session) {
+		if (session == null) {
+			return;
+		}
+
+		var report = session.toReport();
+		lastReport = report;
+
+		TagLog.info("Tag load finished in {} ms", formatMillis(report.totalMillis()));
+		for (var phase : report.phases()) {
+			TagLog.info("  {}{}: {} ms, {}", indent(phase.depth()), phase.name(), formatMillis(phase.millis()),
+					formatBytes(phase.bytes()));
+		}
+		for (var listener : report.listeners()) {
+			TagLog.info("  TagEvent listener {}: {} ms", listener.name(), formatMillis(listener.millis()));
+		}
+	}
+
+	@Nullable
+	public static Report getLastReport() {
+		return lastReport;
+	}
+
+	@Nonnull
+	static String indent(int depth) {
+		var builder = new StringBuilder();
+		for (int i = 0; i < depth; i++) {
+			builder.append("  ");
+		}
+		return builder.toString();
+	}
+
+	@Nonnull
+	static String formatMillis(double millis) {
+		return String.format("%.2f", millis);
+	}
+
+	@Nonnull
+	static String formatBytes(long bytes) {
+		if (bytes < 0) {
+			return "n/a";
+		}
+		if (bytes < 1024 * 1024) {
+			return String.format("%.1f KiB", bytes / 1024.0);
+		}
+		return String.format("%.1f MiB", bytes / (1024.0 * 1024.0));
+	}
+
+	private static long allocatedBytes() {
+		if (THREAD_BEAN == null) {
+			return -1;
+		}
+		return THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	@Nullable
+	private static com.sun.management.ThreadMXBean findThreadBean() {
+		try {
+			if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+					&& bean.isThreadAllocatedMemorySupported()) {
+				if (!bean.isThreadAllocatedMemoryEnabled()) {
+					bean.setThreadAllocatedMemoryEnabled(true);
+				}
+				return bean;
+			}
+		} catch (Throwable e) {
+			//
+		}
+		return null;
+	}
+
+	private static int findBusId() {
+		var field = findBusField("busID");
+		try {
+			return field != null ? field.getInt(MinecraftForge.EVENT_BUS) : -1;
+		} catch (Exception e) {
+			return -1;
+		}
+	}
+
+	@Nullable
+	private static Field findBusField(String name) {
+		try {
+			var field = EventBus.class.getDeclaredField(name);
+			field.setAccessible(true);
+			return field;
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	static final class Binding implements AutoCloseable {
+		@Nullable
+		private final Session session;
+		@Nullable
+		private final Binding previous;
+		private int depth = 0;
+
+		private Binding(@Nullable Session session, @Nullable Binding previous) {
+			this.session = session;
+			this.previous = previous;
+		}
+
+		@Override
+		public void close() {
+			if (previous != null) {
+				BOUND.set(previous);
+			} else {
+				BOUND.remove();
+			}
+		}
+	}
+
+	static final class Section implements AutoCloseable {
+		private final Binding binding;
+		private final Phase phase;
+
+		private Section(Binding binding, Phase phase) {
+			this.binding = binding;
+			this.phase = phase;
+		}
+
+		@Override
+		public void close() {
+			if (binding != null) {
+				binding.depth = Math.max(0, binding.depth - 1);
+				binding.session.close(phase);
+			}
+		}
+	}
+
+	private static final class Phase {
+		private final String name;
+		private final int depth;
+		private final long startNanos;
+		private final long startBytes;
+		private long nanos;
+		private long bytes;
+
+		private Phase(String name, int depth) {
+			this.name = name;
+			this.depth = depth;
+			this.startNanos = System.nanoTime();
+			this.startBytes = allocatedBytes();
+		}
+	}
+
+	static final class Session {
+		private final long startNanos;
+		private final List<Phase> phases = new ObjectArrayList<>();
+		private final List<Timing> listeners = new ObjectArrayList<>();
+
+		private Session(long startNanos) {
+			this.startNanos = startNanos;
+		}
+
+		private synchronized Phase open(String name, int depth) {
+			var phase = new Phase(name, depth);
+			phases.add(phase);
+			return phase;
+		}
+
+		private synchronized void close(Phase phase) {
+			phase.nanos = System.nanoTime() - phase.startNanos;
+			long endBytes = allocatedBytes();
+			phase.bytes = phase.startBytes < 0 || endBytes < 0 ? -1 : endBytes - phase.startBytes;
+		}
+
+		private synchronized void listener(String name, long nanos) {
+			listeners.add(new Timing(name, nanos / 1_000_000.0));
+		}
+
+		private synchronized Report toReport() {
+			var phaseTimings = new ObjectArrayList<PhaseTiming>(phases.size());
+			for (var phase : phases) {
+				phaseTimings.add(new PhaseTiming(phase.name, phase.depth, phase.nanos / 1_000_000.0, phase.bytes));
+			}
+
+			var slowest = new ObjectArrayList<>(listeners);
+			slowest.sort(Comparator.comparingDouble(Timing::millis).reversed());
+			if (slowest.size() > SLOWEST_LISTENERS) {
+				slowest.size(SLOWEST_LISTENERS);
+			}
+
+			return new Report((System.nanoTime() - startNanos) / 1_000_000.0, phaseTimings, slowest);
+		}
+	}
+
+	@Desugar
+	record PhaseTiming(String name, int depth, double millis, long bytes) {
+	}
+
+	@Desugar
+	record Timing(String name, double millis) {
+	}
+
+	@Desugar
+	record Report(double totalMillis, List<PhaseTiming> phases, List<Timing> listeners) {
+	}
+}
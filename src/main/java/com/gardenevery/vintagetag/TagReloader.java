@@ -0,0 +1,411 @@
+package com.gardenevery.vintagetag;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import net.minecraft.command.ICommandSender;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.text.TextComponentTranslation;
+
+/**
+ * Runs the tag loading pipeline (ore sync, mod scan, config scan, bake).
+ * <p>
+ * Asynchronous reloads scan, parse and build on a single background thread and
+ * hand the finished snapshot to the server thread, which publishes it at the
+ * next tick boundary. Reload requests that arrive while a reload is running
+ * are coalesced into one follow-up reload.
+ * <p>
+ * A reload limited to a {@link ReloadScope} reads only the matching config
+ * files again and keeps every other source as it was. Ore dictionary changes
+ * after loading are applied through such a reload that reads no files.
+ * <p>
+ * The first load is prepared on the same background thread while mods are
+ * still initializing (see {@link #prepare()}).
+ */
+final class TagReloader {
+	private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(
+			new ThreadFactoryBuilder().setNameFormat("VintageTag Reload").setDaemon(true).build());
+
+	private static final Object LOCK = new Object();
+	private static final List<ICommandSender> WAITING = new ObjectArrayList<>();
+	private static boolean running = false;
+	private static boolean pending = false;
+	@Nullable
+	private static ReloadScope requested;
+	// A command asked for a full reload, whose result refreshes the snapshot cache
+	private static boolean requestedAll = false;
+	@Nullable
+	private static volatile Future<?> prepared;
+
+	enum Stage {
+		ORE_DICT("ore"), MOD_SCAN("mods"), CONFIG_SCAN("config"), BAKE("bake");
+
+		private final String name;
+
+		Stage(String name) {
+			this.name = name;
+		}
+
+		public String getLangKey() {
+			return "tag.command.reload.stage." + name;
+		}
+	}
+
+	public static boolean isEnabled() {
+		return TagConfig.enableOreSync || TagConfig.enableModScanner || TagConfig.enableConfigScanner;
+	}
+
+	/**
+	 * Starts reading and parsing tag files on the reload thread, so that the
+	 * first load only has to resolve and bake them.
+	 */
+	public static void prepare() {
+		if (TagConfig.enableModScanner || TagConfig.enableConfigScanner) {
+			prepared = EXECUTOR.submit(TagLoader::prepare);
+		}
+	}
+
+	/**
+	 * Waits for {@link #prepare()}; the first load must not scan while the
+	 * indexes are still being filled.
+	 */
+	private static void awaitPrepared() {
+		var task = prepared;
+		if (task == null) {
+			return;
+		}
+
+		prepared = null;
+		try (var ignored = TagProfiler.section("prepare wait")) {
+			task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			TagLog.info("Preparing tag files failed", e.getCause());
+		}
+	}
+
+	/**
+	 * Drops the {@link #prepare()} task if it has not started yet, otherwise
+	 * waits for it, so it never runs unobserved next to a load that did not
+	 * need it.
+	 */
+	private static void cancelPrepared() {
+		var task = prepared;
+		if (task != null && task.cancel(false)) {
+			prepared = null;
+			return;
+		}
+		awaitPrepared();
+	}
+
+	/**
+	 * Runs the pipeline on the calling thread, recording into the given
+	 * profiler session, and returns the built, unpublished snapshot. If
+	 * {@code cache} is set, the result of a full reload is written to the
+	 * snapshot cache in the background. Fingerprinting reads every input, so
+	 * only reloads a user asked for do it, not the automatic ones.
+	 */
+	@Nonnull
+	public static TagManager.Snapshot load(@Nonnull ReloadScope scope, boolean cache,
+			@Nullable TagProfiler.Session session, @Nonnull Consumer<Stage> progress) {
+		try (var ignored = TagProfiler.bind(session)) {
+			var fingerprint = cache && TagConfig.enableSnapshotCache && scope.isAll() ? TagCache.fingerprint() : null;
+			var snapshot = scanAndBuild(scope, progress);
+			if (fingerprint != null) {
+				EXECUTOR.execute(() -> TagCache.save(fingerprint, snapshot));
+			}
+			return snapshot;
+		}
+	}
+
+	/**
+	 * Like a full {@link #load(ReloadScope, boolean, TagProfiler.Session, Consumer)},
+	 * but first tries the snapshot cache and skips the pipeline when none of
+	 * its inputs changed since it was written. A cached load records no tag
+	 * sources, so the first reload after it reads everything again.
+	 */
+	@Nonnull
+	public static TagManager.Snapshot loadCached(@Nullable TagProfiler.Session session,
+			@Nonnull Consumer<Stage> progress) {
+		if (!TagConfig.enableSnapshotCache) {
+			return load(ReloadScope.ALL, true, session, progress);
+		}
+
+		try (var ignored = TagProfiler.bind(session)) {
+			var fingerprint = TagCache.fingerprint();
+			var cached = TagCache.load(fingerprint);
+			if (cached != null) {
+				cancelPrepared();
+				return cached;
+			}
+
+			var snapshot = scanAndBuild(ReloadScope.ALL, progress);
+			EXECUTOR.execute(() -> TagCache.save(fingerprint, snapshot));
+			return snapshot;
+		}
+	}
+
+	@Nonnull
+	private static TagManager.Snapshot scanAndBuild(ReloadScope scope, Consumer<Stage> progress) {
+		awaitPrepared();
+		TagSources.begin();
+		if (!scope.isAll() && !scope.oreOnly()) {
+			TagLog.info("Reloading config tags matching {}", scope.describe());
+		}
+
+		if (TagConfig.enableOreSync) {
+			progress.accept(Stage.ORE_DICT);
+			try (var ignored = TagProfiler.section("ore sync")) {
+				OreDictSync.sync();
+			}
+		}
+
+		if (scope.oreOnly()) {
+			if (TagSources.keepRest()) {
+				return commitAndBuild(progress);
+			}
+			// Nothing to carry over, e.g. the last load came from the snapshot cache
+			TagLog.info("No tag sources to carry over, reloading all tags");
+			scope = ReloadScope.ALL;
+		}
+
+		boolean prebaked = false;
+		if (TagConfig.enableModScanner || TagConfig.enableConfigScanner) {
+			try (var ignored = TagProfiler.section("prebaked")) {
+				prebaked = TagLoader.loadPrebaked();
+			}
+		}
+
+		if (TagConfig.enableModScanner && !prebaked) {
+			progress.accept(Stage.MOD_SCAN);
+			try (var ignored = TagProfiler.section("jar scan")) {
+				TagLoader.scanModTags();
+			}
+		}
+
+		if (TagConfig.enableConfigScanner && !prebaked) {
+			progress.accept(Stage.CONFIG_SCAN);
+			try (var ignored = TagProfiler.section("config scan")) {
+				TagLoader.scanConfigTags(scope);
+			}
+		}
+		return commitAndBuild(progress);
+	}
+
+	private static TagManager.Snapshot commitAndBuild(Consumer<Stage> progress) {
+		try (var ignored = TagProfiler.section("apply")) {
+			TagSources.commit();
+		}
+		TagResolver.finish();
+		TagDiagnostics.finish();
+
+		progress.accept(Stage.BAKE);
+		try (var ignored = TagProfiler.section("bake")) {
+			return TagManager.build();
+		}
+	}
+
+	/**
+	 * Reloads on the reload thread and waits for it, then publishes the result
+	 * on the calling server thread. Loads never overlap: if a background
+	 * reload is running, the request is queued into it instead.
+	 */
+	public static void reload(@Nonnull MinecraftServer server, @Nonnull ICommandSender sender,
+			@Nonnull ReloadScope scope) {
+		synchronized (LOCK) {
+			if (running) {
+				requested = requested == null ? scope : requested.merge(scope);
+				requestedAll |= scope.isAll();
+				WAITING.add(sender);
+				pending = true;
+				sender.sendMessage(new TextComponentTranslation("tag.command.reload.queued"));
+				return;
+			}
+			running = true;
+		}
+
+		long startTime = System.currentTimeMillis();
+		var session = TagProfiler.begin();
+		var task = EXECUTOR.submit(() -> {
+			try {
+				return load(scope, scope.isAll(), session, stage -> {
+				});
+			} catch (RuntimeException e) {
+				TagSources.reset();
+				throw e;
+			}
+		});
+
+		boolean handedOff = false;
+		try {
+			var snapshot = task.get();
+			publish(snapshot, session);
+
+			long duration = System.currentTimeMillis() - startTime;
+			sender.sendMessage(
+					new TextComponentTranslation("tag.command.reload.success.time", duration, duration / 1000.0));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			// The load cannot be stopped halfway; finish it like an asynchronous reload
+			EXECUTOR.execute(() -> finishInterrupted(server, sender, task, session, startTime));
+			handedOff = true;
+			sender.sendMessage(new TextComponentTranslation("tag.command.reload.started"));
+		} catch (ExecutionException e) {
+			TagProfiler.finish(session);
+			TagLog.info("Tag reload failed", e.getCause());
+			sender.sendMessage(new TextComponentTranslation("tag.command.reload.failed"));
+		} finally {
+			if (!handedOff) {
+				release(server);
+			}
+		}
+	}
+
+	/**
+	 * Publishes a synchronous reload whose caller was interrupted while
+	 * waiting. Runs on the reload thread after the load, so the task is done.
+	 */
+	private static void finishInterrupted(MinecraftServer server, ICommandSender sender,
+			Future<TagManager.Snapshot> task, @Nullable TagProfiler.Session session, long startTime) {
+		try {
+			var snapshot = task.get();
+			server.addScheduledTask(() -> {
+				publish(snapshot, session);
+
+				long duration = System.currentTimeMillis() - startTime;
+				sender.sendMessage(
+						new TextComponentTranslation("tag.command.reload.success.time", duration, duration / 1000.0));
+			});
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			TagProfiler.finish(session);
+		} catch (ExecutionException e) {
+			TagProfiler.finish(session);
+			TagLog.info("Tag reload failed", e.getCause());
+			notify(server, Collections.singletonList(sender), new TextComponentTranslation("tag.command.reload.failed"));
+		} finally {
+			release(server);
+		}
+	}
+
+	/**
+	 * Ends the current reload, or starts the one queued meanwhile.
+	 */
+	private static void release(MinecraftServer server) {
+		synchronized (LOCK) {
+			if (pending) {
+				EXECUTOR.execute(() -> runAsync(server));
+			} else {
+				running = false;
+			}
+		}
+	}
+
+	/**
+	 * Schedules a background reload. If one is already running, the request is
+	 * merged into a single reload that starts once the current one finishes.
+	 */
+	public static void reloadAsync(@Nonnull MinecraftServer server, @Nullable ICommandSender sender,
+			@Nonnull ReloadScope scope) {
+		synchronized (LOCK) {
+			requested = requested == null ? scope : requested.merge(scope);
+			if (sender != null) {
+				WAITING.add(sender);
+				requestedAll |= scope.isAll();
+			}
+
+			if (running) {
+				pending = true;
+				if (sender != null) {
+					sender.sendMessage(new TextComponentTranslation("tag.command.reload.queued"));
+				}
+				return;
+			}
+			running = true;
+		}
+
+		if (sender != null) {
+			sender.sendMessage(new TextComponentTranslation("tag.command.reload.started"));
+		}
+		EXECUTOR.execute(() -> runAsync(server));
+	}
+
+	private static void runAsync(MinecraftServer server) {
+		List<ICommandSender> senders;
+		ReloadScope scope;
+		boolean cache;
+		synchronized (LOCK) {
+			senders = new ObjectArrayList<>(WAITING);
+			WAITING.clear();
+			pending = false;
+			scope = requested != null ? requested : ReloadScope.ALL;
+			requested = null;
+			cache = requestedAll;
+			requestedAll = false;
+		}
+
+		long startTime = System.currentTimeMillis();
+		var session = TagProfiler.begin();
+
+		try {
+			var snapshot = load(scope, cache, session, stage -> notify(server, senders,
+					new TextComponentTranslation("tag.command.reload.progress",
+							new TextComponentTranslation(stage.getLangKey()))));
+
+			server.addScheduledTask(() -> {
+				publish(snapshot, session);
+
+				long duration = System.currentTimeMillis() - startTime;
+				for (var sender : senders) {
+					sender.sendMessage(new TextComponentTranslation("tag.command.reload.success.time", duration,
+							duration / 1000.0));
+				}
+			});
+		} catch (Exception e) {
+			TagSources.reset();
+			TagProfiler.finish(session);
+			TagLog.info("Asynchronous tag reload failed", e);
+			notify(server, senders, new TextComponentTranslation("tag.command.reload.failed"));
+		} finally {
+			release(server);
+		}
+	}
+
+	/**
+	 * Publishes a reloaded snapshot on the server thread and ends its
+	 * profiler session.
+	 */
+	private static void publish(TagManager.Snapshot snapshot, @Nullable TagProfiler.Session session) {
+		try (var ignored = TagProfiler.bind(session)) {
+			TagManager.publish(snapshot);
+			OreDictExport.export();
+			NetworkSync.sync(null);
+		}
+		TagProfiler.finish(session);
+	}
+
+	private static void notify(MinecraftServer server, List<ICommandSender> senders,
+			TextComponentTranslation message) {
+		if (senders.isEmpty()) {
+			return;
+		}
+
+		server.addScheduledTask(() -> {
+			for (var sender : senders) {
+				sender.sendMessage(message);
+			}
+		});
+	}
+}
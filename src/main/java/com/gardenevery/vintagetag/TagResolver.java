@@ -0,0 +1,245 @@
+package com.gardenevery.vintagetag;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.regex.PatternSyntaxException;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.gardenevery.vintagetag.TagEntry.BlockEntry;
+import com.gardenevery.vintagetag.TagEntry.FluidEntry;
+import com.gardenevery.vintagetag.TagEntry.ItemEntry;
+import com.gardenevery.vintagetag.TagEntry.ItemEntry.ItemKey;
+
+import it.unimi.dsi.fastutil.objects.Object2IntLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ReferenceOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import net.minecraft.block.Block;
+import net.minecraft.item.Item;
+import net.minecraft.util.ResourceLocation;
+import net.minecraftforge.fluids.Fluid;
+import net.minecraftforge.fluids.FluidRegistry;
+import net.minecraftforge.fml.common.registry.ForgeRegistries;
+
+/**
+ * Resolves the raw IDs of tag values during one load.
+ * <p>
+ * Each distinct ID is looked up in the registry once; both hits and misses
+ * are memoized, so repeated IDs cost a single hash lookup. Unknown IDs are
+ * counted and reported once per ID by {@link #finish()}, which also drops the
+ * caches. Same semantics as the {@link TagEntry} factories otherwise.
+ * <p>
+ * {@link #prefetch(TagType, Collection)} fills the cache for a whole batch of
+ * IDs up front, one worker task per namespace. The workers only read the
+ * registries, which are frozen by the time tags load; the caches themselves
+ * are only written by the loading thread.
+ */
+final class TagResolver {
+	private static final Object MISSING = new Object();
+	private static final int PARALLEL_THRESHOLD = 1024;
+
+	private static final Object2ReferenceOpenHashMap<String, Object> ITEMS = new Object2ReferenceOpenHashMap<>();
+	private static final Object2ReferenceOpenHashMap<String, Object> FLUIDS = new Object2ReferenceOpenHashMap<>();
+	private static final Object2ReferenceOpenHashMap<String, Object> BLOCKS = new Object2ReferenceOpenHashMap<>();
+	private static final Object2IntLinkedOpenHashMap<String> UNKNOWN = new Object2IntLinkedOpenHashMap<>();
+	// Sorted registry names and pattern matches, built on first use in a load
+	private static final EnumMap<TagType, String[]> NAMES = new EnumMap<>(TagType.class);
+	private static final EnumMap<TagType, Map<String, List<String>>> PATTERNS = new EnumMap<>(TagType.class);
+
+	/**
+	 * Returns the registry names a {@link TagPattern} value matches. Each
+	 * pattern is matched once per load; an invalid one is reported and
+	 * matches nothing.
+	 */
+	@Nonnull
+	public static List<String> expand(@Nonnull TagType type, @Nonnull String id) {
+		return PATTERNS.computeIfAbsent(type, key -> new Object2ReferenceOpenHashMap<>()).computeIfAbsent(id, key -> {
+			try {
+				var matches = TagPattern.compile(id, type != TagType.FLUID).match(names(type));
+				if (matches.isEmpty()) {
+					TagDiagnostics.report("Tag pattern matches nothing: {}", null, type.getName() + " " + id, null);
+				}
+				return matches;
+			} catch (PatternSyntaxException e) {
+				TagDiagnostics.report("Invalid tag pattern: {}", null, type.getName() + " " + id, e);
+				return Collections.emptyList();
+			}
+		});
+	}
+
+	/**
+	 * Looks up every ID of the batch that is not cached yet. Small batches are
+	 * resolved on the calling thread.
+	 */
+	public static void prefetch(@Nonnull TagType type, @Nonnull Collection<String> ids) {
+		var cache = cache(type);
+		var byNamespace = new Object2ObjectLinkedOpenHashMap<String, ObjectArrayList<String>>();
+		int missing = 0;
+		for (var id : ids) {
+			if (id.startsWith("#") || id.trim().isEmpty() || TagPattern.isPattern(id) || cache.containsKey(id)) {
+				continue;
+			}
+
+			int colon = id.indexOf(':');
+			var namespace = colon < 0 ? "minecraft" : id.substring(0, colon);
+			byNamespace.computeIfAbsent(namespace, key -> new ObjectArrayList<>()).add(id);
+			missing++;
+		}
+
+		if (missing < PARALLEL_THRESHOLD || byNamespace.size() < 2) {
+			for (var group : byNamespace.values()) {
+				for (var id : group) {
+					cache.put(id, lookup(type, id));
+				}
+			}
+			return;
+		}
+
+		var tasks = new ObjectArrayList<Callable<Object[]>>(byNamespace.size());
+		for (var group : byNamespace.values()) {
+			tasks.add(() -> {
+				var values = new Object[group.size()];
+				for (int i = 0; i < values.length; i++) {
+					values[i] = lookup(type, group.get(i));
+				}
+				return values;
+			});
+		}
+
+		var results = TagLoader.runAll(tasks);
+		int index = 0;
+		for (var group : byNamespace.values()) {
+			// A failed task leaves its IDs to be looked up on demand
+			var values = results.get(index++);
+			if (values != null) {
+				for (int i = 0; i < values.length; i++) {
+					cache.put(group.get(i), values[i]);
+				}
+			}
+		}
+	}
+
+	@Nonnull
+	public static ItemEntry item(@Nullable String id, int metadata) {
+		if (id == null || metadata < 0 || id.trim().isEmpty()) {
+			return ItemEntry.EMPTY;
+		}
+
+		if (id.startsWith("#")) {
+			return TagEntry.item(id, metadata);
+		}
+
+		var item = ITEMS.computeIfAbsent(id, key -> lookup(TagType.ITEM, key));
+		if (item == MISSING) {
+			unknown(TagType.ITEM, id);
+			return ItemEntry.EMPTY;
+		}
+		return TagEntry.item((Item) item, metadata);
+	}
+
+	/**
+	 * Like {@link #item(String, int)}, for the metadata range min to max.
+	 */
+	@Nonnull
+	public static ItemEntry item(@Nullable String id, int min, int max) {
+		if (min == max || id == null || id.startsWith("#")) {
+			return item(id, min);
+		}
+
+		var entry = item(id, 0);
+		return entry instanceof ItemKey key ? TagEntry.itemRange(key.item(), min, max) : entry;
+	}
+
+	@Nonnull
+	public static FluidEntry fluid(@Nullable String id) {
+		if (id == null || id.trim().isEmpty() || id.startsWith("#")) {
+			return TagEntry.fluid(id);
+		}
+
+		var fluid = FLUIDS.computeIfAbsent(id, key -> lookup(TagType.FLUID, key));
+		if (fluid == MISSING) {
+			unknown(TagType.FLUID, id);
+			return FluidEntry.EMPTY;
+		}
+		return TagEntry.fluid((Fluid) fluid);
+	}
+
+	@Nonnull
+	public static BlockEntry block(@Nullable String id) {
+		if (id == null || id.trim().isEmpty() || id.startsWith("#")) {
+			return TagEntry.block(id);
+		}
+
+		var block = BLOCKS.computeIfAbsent(id, key -> lookup(TagType.BLOCK, key));
+		if (block == MISSING) {
+			unknown(TagType.BLOCK, id);
+			return BlockEntry.EMPTY;
+		}
+		return TagEntry.block((Block) block);
+	}
+
+	/**
+	 * Reports every unknown ID seen during this load once to
+	 * {@link TagDiagnostics} and clears the caches.
+	 */
+	public static void finish() {
+		for (var entry : UNKNOWN.object2IntEntrySet()) {
+			TagDiagnostics.report("Unknown ID referenced in tag files: {}", null,
+					entry.getKey() + " (" + entry.getIntValue() + " time(s))", null);
+		}
+
+		ITEMS.clear();
+		FLUIDS.clear();
+		BLOCKS.clear();
+		UNKNOWN.clear();
+		NAMES.clear();
+		PATTERNS.clear();
+	}
+
+	private static String[] names(TagType type) {
+		return NAMES.computeIfAbsent(type, key -> {
+			var names = new ObjectArrayList<String>();
+			switch (type) {
+				case ITEM -> ForgeRegistries.ITEMS.getKeys().forEach(name -> names.add(name.toString()));
+				case FLUID -> names.addAll(FluidRegistry.getRegisteredFluids().keySet());
+				case BLOCK -> ForgeRegistries.BLOCKS.getKeys().forEach(name -> names.add(name.toString()));
+			}
+
+			var sorted = names.toArray(new String[0]);
+			Arrays.sort(sorted);
+			return sorted;
+		});
+	}
+
+	private static Object2ReferenceOpenHashMap<String, Object> cache(TagType type) {
+		return switch (type) {
+			case ITEM -> ITEMS;
+			case FLUID -> FLUIDS;
+			case BLOCK -> BLOCKS;
+		};
+	}
+
+	private static Object lookup(TagType type, String id) {
+		Object value = switch (type) {
+			case ITEM -> ForgeRegistries.ITEMS.getValue(new ResourceLocation(id));
+			case FLUID -> FluidRegistry.getFluid(id);
+			// The block registry falls back to air for unknown names, so check the key
+			case BLOCK -> {
+				var name = new ResourceLocation(id);
+				yield ForgeRegistries.BLOCKS.containsKey(name) ? ForgeRegistries.BLOCKS.getValue(name) : null;
+			}
+		};
+		return value == null ? MISSING : value;
+	}
+
+	private static void unknown(TagType type, String id) {
+		UNKNOWN.addTo(type.getName() + " " + id, 1);
+	}
+}
@@ -0,0 +1,303 @@
+package com.gardenevery.vintagetag;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.Nonnull;
+
+import com.gardenevery.vintagetag.TagEntry.BlockEntry;
+import com.gardenevery.vintagetag.TagEntry.Exclusion;
+import com.gardenevery.vintagetag.TagEntry.FluidEntry;
+import com.gardenevery.vintagetag.TagEntry.ItemEntry;
+import com.gardenevery.vintagetag.TagParser.RawEntry;
+import com.github.bsideup.jabel.Desugar;
+
+import it.unimi.dsi.fastutil.objects.Object2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+
+/**
+ * Records which source contributed which values to which tag, so a reload
+ * only has to touch the tags whose sources changed.
+ * <p>
+ * A source is one ore name, the prebaked file, one jar entry or one
+ * config file. Each load lists its sources in apply order between
+ * {@link #begin()} and {@link #commit()}. A source whose key equals the one
+ * from the previous load is carried over as is. Tags that an added, removed
+ * or changed source contributes to are then folded again from all of their
+ * contributions in source order, which keeps the add/replace semantics of a
+ * full load, and replaced in {@link TagManager}'s containers. Every other tag
+ * keeps the entries the containers already hold.
+ * <p>
+ * Contributions hold symbolic values (registry names), so sources can be
+ * collected without touching any registry. Only the folded values of the
+ * changed tags are resolved, in one batch through {@link TagResolver}.
+ * Pattern values ({@link TagPattern}) are expanded to the names they match
+ * at the same point, and "!" values become {@link Exclusion}s.
+ * <p>
+ * Only used by the loading thread.
+ */
+final class TagSources {
+	private static Object2ObjectLinkedOpenHashMap<String, Source> current = new Object2ObjectLinkedOpenHashMap<>();
+	private static Object2ObjectLinkedOpenHashMap<String, Source> next;
+
+	public static void begin() {
+		next = new Object2ObjectLinkedOpenHashMap<>(Math.max(current.size(), 16));
+	}
+
+	/**
+	 * Carries the source over from the previous load if its key is equal.
+	 *
+	 * @return true if the source was reused and need not be added
+	 */
+	public static boolean reuse(@Nonnull String id, @Nonnull Object key) {
+		var previous = current.get(id);
+		if (previous != null && (previous.key() == key || previous.key().equals(key))) {
+			next.put(id, previous);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Carries the source over from the previous load unconditionally, e.g. for
+	 * inputs a partial reload does not read again.
+	 */
+	public static void keep(@Nonnull String id) {
+		var previous = current.get(id);
+		if (previous != null) {
+			next.put(id, previous);
+		}
+	}
+
+	/**
+	 * Carries over every source of the previous load that this load has not
+	 * listed, e.g. all tag files when only the ore dictionary changed.
+	 *
+	 * @return false if there was no previous load to carry over
+	 */
+	public static boolean keepRest() {
+		for (var source : current.values()) {
+			next.putIfAbsent(source.id(), source);
+		}
+		return !current.isEmpty();
+	}
+
+	public static void add(@Nonnull String id, @Nonnull Object key, @Nonnull List<Contribution> contributions) {
+		next.put(id, new Source(id, key, contributions));
+	}
+
+	/**
+	 * Applies the difference between the previous and this load to the tag
+	 * containers.
+	 *
+	 * @return the number of tags that were folded again
+	 */
+	public static int commit() {
+		var previous = current;
+		var sources = next;
+		next = null;
+
+		var dirty = new ObjectOpenHashSet<TagKey>();
+		int changedSources = 0;
+		if (!sameOrder(previous, sources)) {
+			previous.values().forEach(source -> markDirty(source, dirty));
+			sources.values().forEach(source -> markDirty(source, dirty));
+			changedSources = sources.size();
+		} else {
+			for (var source : sources.values()) {
+				var old = previous.get(source.id());
+				if (old != source) {
+					markDirty(source, dirty);
+					if (old != null) {
+						markDirty(old, dirty);
+					}
+					changedSources++;
+				}
+			}
+
+			for (var old : previous.values()) {
+				if (!sources.containsKey(old.id())) {
+					markDirty(old, dirty);
+					changedSources++;
+				}
+			}
+		}
+
+		current = sources;
+		if (dirty.isEmpty()) {
+			return 0;
+		}
+
+		var folded = new Object2ObjectOpenHashMap<TagKey, Set<RawEntry>>(dirty.size());
+		for (var source : sources.values()) {
+			for (var contribution : source.contributions()) {
+				var key = new TagKey(contribution.type(), contribution.tagName());
+				if (!dirty.contains(key)) {
+					continue;
+				}
+
+				fold(folded, key, contribution);
+			}
+		}
+
+		var ids = new EnumMap<TagType, Set<String>>(TagType.class);
+		for (var entry : folded.entrySet()) {
+			var typeIds = ids.computeIfAbsent(entry.getKey().type(), type -> new ObjectOpenHashSet<>());
+			for (var value : entry.getValue()) {
+				typeIds.addAll(ids(entry.getKey().type(), value));
+			}
+		}
+		try (var ignored = TagProfiler.section("resolve")) {
+			ids.forEach(TagResolver::prefetch);
+		}
+
+		for (var key : dirty) {
+			replace(key, folded.getOrDefault(key, Collections.emptySet()));
+		}
+
+		TagLog.info("{} of {} tag sources changed, {} tags updated", changedSources, sources.size(), dirty.size());
+		return dirty.size();
+	}
+
+	/**
+	 * Folds the contributions of one type in source order, without resolving
+	 * anything, e.g. to compare two ways of loading the same files.
+	 */
+	@Nonnull
+	static Map<String, Set<RawEntry>> fold(@Nonnull TagType type, @Nonnull List<Contribution> contributions) {
+		var folded = new Object2ObjectOpenHashMap<TagKey, Set<RawEntry>>();
+		for (var contribution : contributions) {
+			if (contribution.type() == type) {
+				fold(folded, new TagKey(type, contribution.tagName()), contribution);
+			}
+		}
+
+		var byName = new Object2ObjectOpenHashMap<String, Set<RawEntry>>(folded.size());
+		folded.forEach((key, values) -> byName.put(key.tagName(), values));
+		return byName;
+	}
+
+	/**
+	 * A replacing contribution starts the tag over, any other adds to it.
+	 */
+	private static void fold(Map<TagKey, Set<RawEntry>> folded, TagKey key, Contribution contribution) {
+		var values = folded.get(key);
+		if (contribution.replace() || values == null) {
+			folded.put(key, new ObjectOpenHashSet<>(contribution.values()));
+		} else {
+			values.addAll(contribution.values());
+		}
+	}
+
+	/**
+	 * Forgets all sources and clears the containers, so the next load starts
+	 * from scratch.
+	 */
+	public static void reset() {
+		current = new Object2ObjectLinkedOpenHashMap<>();
+		next = null;
+		TagManager.clear();
+	}
+
+	private static void markDirty(Source source, Set<TagKey> dirty) {
+		for (var contribution : source.contributions()) {
+			dirty.add(new TagKey(contribution.type(), contribution.tagName()));
+		}
+	}
+
+	/**
+	 * Whether the sources present in both loads appear in the same relative
+	 * order; if not, every tag has to be folded again.
+	 */
+	private static boolean sameOrder(Map<String, Source> previous, Map<String, Source> sources) {
+		var before = previous.keySet().iterator();
+		for (var id : sources.keySet()) {
+			if (!previous.containsKey(id)) {
+				continue;
+			}
+
+			String old;
+			do {
+				old = before.next();
+			} while (!sources.containsKey(old));
+
+			if (!old.equals(id)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void replace(TagKey key, Set<RawEntry> values) {
+		var type = key.type();
+		switch (type) {
+			case ITEM -> {
+				var entries = new ObjectOpenHashSet<ItemEntry>(values.size());
+				for (var value : values) {
+					for (var id : ids(type, value)) {
+						entries.add(exclude(value, TagResolver.item(id, value.metadata(), value.maxMetadata())));
+					}
+				}
+				TagManager.replaceItem(entries, key.tagName());
+			}
+			case FLUID -> {
+				var entries = new ObjectOpenHashSet<FluidEntry>(values.size());
+				for (var value : values) {
+					for (var id : ids(type, value)) {
+						entries.add(exclude(value, TagResolver.fluid(id)));
+					}
+				}
+				TagManager.replaceFluid(entries, key.tagName());
+			}
+			case BLOCK -> {
+				var entries = new ObjectOpenHashSet<BlockEntry>(values.size());
+				for (var value : values) {
+					for (var id : ids(type, value)) {
+						entries.add(exclude(value, TagResolver.block(id)));
+					}
+				}
+				TagManager.replaceBlock(entries, key.tagName());
+			}
+		}
+	}
+
+	/**
+	 * The IDs a value stands for, without a leading "!": the ID itself, or the
+	 * names a pattern matches.
+	 */
+	private static List<String> ids(TagType type, RawEntry value) {
+		var id = isExclusion(value) ? value.id().substring(1).trim() : value.id();
+		return TagPattern.isPattern(id) ? TagResolver.expand(type, id) : Collections.singletonList(id);
+	}
+
+	private static boolean isExclusion(RawEntry value) {
+		return value.id().startsWith("!");
+	}
+
+	/**
+	 * Wraps the resolved entry of a "!" value into an {@link Exclusion}.
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T extends TagEntry> T exclude(RawEntry value, T entry) {
+		return isExclusion(value) && !entry.isEmpty() ? (T) new Exclusion(entry) : entry;
+	}
+
+	/**
+	 * Values one source adds to, or replaces in, one tag.
+	 */
+	@Desugar
+	record Contribution(TagType type, String tagName, boolean replace, Collection<RawEntry> values) {
+	}
+
+	@Desugar
+	private record Source(String id, Object key, List<Contribution> contributions) {
+	}
+
+	@Desugar
+	private record TagKey(TagType type, String tagName) {
+	}
+}
@@ -0,0 +1,160 @@
+package com.gardenevery.vintagetag;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import it.unimi.dsi.fastutil.objects.Object2ReferenceOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+
+import net.minecraft.server.MinecraftServer;
+
+/**
+ * Watches config/tags for edits and reloads tags in the background.
+ * <p>
+ * Events are collected until no further change arrives for
+ * {@link #DEBOUNCE_MILLIS}, so saving many files at once triggers a single
+ * reload. Only the changed files are parsed again; every other config file
+ * and mod jar is served from {@link TagLoader}'s caches.
+ */
+final class TagWatcher {
+	private static final Path ROOT = Paths.get("config", "tags");
+	private static final long DEBOUNCE_MILLIS = 500;
+	// Type directory plus up to two namespace/path levels, see TagLoader
+	private static final int MAX_DEPTH = 3;
+
+	@Nullable
+	private static WatchService watchService;
+
+	public static synchronized void start(@Nonnull MinecraftServer server) {
+		if (watchService != null) {
+			return;
+		}
+
+		// Only touched by the watcher thread once it is started
+		var keys = new Object2ReferenceOpenHashMap<WatchKey, Path>();
+		WatchService service;
+		try {
+			Files.createDirectories(ROOT);
+			service = FileSystems.getDefault().newWatchService();
+			register(service, keys, ROOT, 0);
+		} catch (IOException e) {
+			TagLog.info("Failed to watch tag directory: {}", ROOT, e);
+			return;
+		}
+
+		watchService = service;
+		new ThreadFactoryBuilder().setNameFormat("VintageTag Watcher").setDaemon(true).build()
+				.newThread(() -> run(server, service, keys)).start();
+		TagLog.info("Watching {} for tag changes", ROOT);
+	}
+
+	public static synchronized void stop() {
+		if (watchService == null) {
+			return;
+		}
+
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			TagLog.info("Failed to close tag directory watcher", e);
+		}
+		watchService = null;
+	}
+
+	private static void run(MinecraftServer server, WatchService service, Map<WatchKey, Path> keys) {
+		try {
+			while (true) {
+				var changed = new ObjectOpenHashSet<Path>();
+				collect(service, keys, service.take(), changed);
+
+				WatchKey key;
+				while ((key = service.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+					collect(service, keys, key, changed);
+				}
+
+				if (changed.isEmpty()) {
+					continue;
+				}
+
+				for (var path : changed) {
+					TagLoader.invalidateConfigFiles(path);
+				}
+				TagLog.info("Detected {} changed tag file(s), reloading", changed.size());
+				TagReloader.reloadAsync(server, null, ReloadScope.ALL);
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// Stopped
+		}
+	}
+
+	private static void collect(WatchService service, Map<WatchKey, Path> keys, WatchKey key, Set<Path> changed) {
+		var dir = keys.get(key);
+		if (dir == null) {
+			key.cancel();
+			return;
+		}
+
+		for (var event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				changed.add(ROOT);
+				continue;
+			}
+
+			var path = dir.resolve((Path) event.context());
+			if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path)) {
+				int depth = ROOT.relativize(path).getNameCount();
+				if (depth <= MAX_DEPTH) {
+					try {
+						register(service, keys, path, depth);
+					} catch (IOException e) {
+						TagLog.info("Failed to watch tag directory: {}", path, e);
+					}
+				}
+				changed.add(path);
+			} else if (TagParser.isConfigTagFile(path.getFileName().toString())
+					|| TagParser.isTagPack(path.getFileName().toString())
+					|| event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+				changed.add(path);
+			}
+		}
+
+		if (!key.reset()) {
+			keys.remove(key);
+		}
+	}
+
+	private static void register(WatchService service, Map<WatchKey, Path> keys, Path dir, int depth)
+			throws IOException {
+		var key = dir.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+				StandardWatchEventKinds.ENTRY_MODIFY);
+		keys.put(key, dir);
+
+		if (depth >= MAX_DEPTH) {
+			return;
+		}
+
+		try (var children = Files.list(dir)) {
+			var iterator = children.iterator();
+			while (iterator.hasNext()) {
+				var child = iterator.next();
+				if (Files.isDirectory(child)) {
+					register(service, keys, child, depth + 1);
+				}
+			}
+		}
+	}
+}
@@ -6,6 +6,7 @@ import net.minecraftforge.fml.common.event.FMLLoadCompleteEvent;
 import net.minecraftforge.fml.common.event.FMLPostInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLPreInitializationEvent;
 import net.minecraftforge.fml.common.event.FMLServerStartingEvent;
+import net.minecraftforge.fml.common.event.FMLServerStoppingEvent;
 import net.minecraftforge.fml.relauncher.Side;
 
 @Mod(modid = Tags.MOD_ID, name = Tags.MOD_NAME, version = Tags.VERSION)
@@ -14,10 +15,15 @@ public class VintageTag {
 	public void preInit(FMLPreInitializationEvent event) {
 		NetworkSync.register();
 		MinecraftForge.EVENT_BUS.register(new NetworkSync.EventHandler());
+		MinecraftForge.EVENT_BUS.register(new OreDictSync.EventHandler());
 
 		if (event.getSide() == Side.CLIENT) {
 			ClientNetworkSync.register();
 		}
+
+		if (TagReloader.isEnabled()) {
+			TagReloader.prepare();
+		}
 	}
 
 	@Mod.EventHandler
@@ -30,25 +36,31 @@ public class VintageTag {
 
 	@Mod.EventHandler
 	public void onFMLoadComplete(FMLLoadCompleteEvent event) {
-		if (TagConfig.enableOreSync) {
-			OreDictSync.sync();
-		}
-
-		if (TagConfig.enableModScanner) {
-			TagLoader.scanModTags();
+		if (TagReloader.isEnabled()) {
+			var session = TagProfiler.begin();
+			var snapshot = TagReloader.loadCached(session, stage -> {
+			});
+			try (var ignored = TagProfiler.bind(session)) {
+				TagManager.publish(snapshot);
+			}
+			TagProfiler.finish(session);
+			OreDictSync.listen();
+			OreDictExport.export();
 		}
+	}
 
-		if (TagConfig.enableConfigScanner) {
-			TagLoader.scanConfigTags();
-		}
+	@Mod.EventHandler
+	public void onServerStarting(FMLServerStartingEvent event) {
+		event.registerServerCommand(new TagCommand());
+		OreDictSync.onServerStarting(event.getServer());
 
-		if (TagConfig.enableOreSync || TagConfig.enableModScanner || TagConfig.enableConfigScanner) {
-			TagManager.bake();
+		if (TagConfig.watchConfigTags && TagConfig.enableConfigScanner) {
+			TagWatcher.start(event.getServer());
 		}
 	}
 
 	@Mod.EventHandler
-	public void onServerStarting(FMLServerStartingEvent event) {
-		event.registerServerCommand(new TagCommand());
+	public void onServerStopping(FMLServerStoppingEvent event) {
+		TagWatcher.stop();
 	}
 }
@@ -0,0 +1,40 @@
+package com.gardenevery.vintagetag;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+class SnapshotFileTest {
+
+	@Test
+	void roundTripKeepsEntriesReplaceFlagsAndInputs() throws IOException {
+		var written = new SnapshotFile(new byte[] { 1, 2, 3 });
+		written.setInputs(new byte[] { 4, 5 });
+		written.add(TagType.ITEM, "forge:ingots", Arrays.asList(new SnapshotFile.Entry("minecraft:iron_ingot", 0),
+				new SnapshotFile.Entry("minecraft:dye", 2, 7)), true);
+		written.add(TagType.ITEM, "forge:gems", Collections.singletonList(new SnapshotFile.Entry("minecraft:diamond", 0)));
+		written.add(TagType.BLOCK, "forge:ores", Collections.emptyList(), true);
+
+		var file = Files.createTempFile("snapshot", ".bin");
+		try {
+			written.write(file);
+			var read = SnapshotFile.read(file);
+
+			assertTrue(read.matches(new byte[] { 1, 2, 3 }));
+			assertEquals(written.getTags(TagType.ITEM), read.getTags(TagType.ITEM));
+			assertEquals(written.getTags(TagType.BLOCK), read.getTags(TagType.BLOCK));
+			assertTrue(read.isReplace(TagType.ITEM, "forge:ingots"));
+			assertFalse(read.isReplace(TagType.ITEM, "forge:gems"));
+			assertTrue(read.isReplace(TagType.BLOCK, "forge:ores"));
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package com.gardenevery.vintagetag;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.gardenevery.vintagetag.TagParser.RawEntry;
+
+import it.unimi.dsi.fastutil.objects.ObjectLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+
+class TagCompilerTest {
+	private static final String STONE = "minecraft:stone";
+	private static final String WOOL = "minecraft:wool";
+
+	@Test
+	void excludingOneMetadataSplitsRange() {
+		var result = exclude(entries(new RawEntry(STONE, 0, 10)), new RawEntry(STONE, 5));
+		assertEquals(entries(new RawEntry(STONE, 0, 4), new RawEntry(STONE, 6, 10)), result);
+	}
+
+	@Test
+	void excludingRangeEdgesShrinksRange() {
+		var result = exclude(entries(new RawEntry(STONE, 0, 10)), new RawEntry(STONE, 0), new RawEntry(STONE, 10));
+		assertEquals(entries(new RawEntry(STONE, 1, 9)), result);
+	}
+
+	@Test
+	void adjacentExclusionsLeaveNoGap() {
+		var result = exclude(entries(new RawEntry(STONE, 0, 10)), new RawEntry(STONE, 4), new RawEntry(STONE, 5));
+		assertEquals(entries(new RawEntry(STONE, 0, 3), new RawEntry(STONE, 6, 10)), result);
+
+		result = exclude(entries(new RawEntry(STONE, 0, 10)), new RawEntry(STONE, 2, 4), new RawEntry(STONE, 5, 9));
+		assertEquals(entries(new RawEntry(STONE, 0, 1), new RawEntry(STONE, 10)), result);
+	}
+
+	@Test
+	void excludingFromWildcardKeepsItOpenEnded() {
+		var result = exclude(entries(new RawEntry(STONE, 0, TagParser.MAX_METADATA)), new RawEntry(STONE, 6));
+		assertEquals(entries(new RawEntry(STONE, 0, 5), new RawEntry(STONE, 7, TagParser.MAX_METADATA)), result);
+	}
+
+	@Test
+	void excludingCoveringRangeRemovesEverything() {
+		var result = exclude(entries(new RawEntry(STONE, 2, 4), new RawEntry(STONE, 7)), new RawEntry(STONE, 0, 10));
+		assertTrue(result.isEmpty());
+	}
+
+	@Test
+	void exclusionsOnlyTouchTheirOwnId() {
+		var result = exclude(entries(new RawEntry(STONE, 0, 3), new RawEntry(WOOL, 0, 3), new RawEntry(WOOL, 9)),
+				new RawEntry(STONE, 1), new RawEntry(WOOL, 9));
+		assertEquals(entries(new RawEntry(STONE, 0), new RawEntry(STONE, 2, 3), new RawEntry(WOOL, 0, 3)), result);
+	}
+
+	private static Set<RawEntry> exclude(Set<RawEntry> result, RawEntry... excluded) {
+		TagCompiler.exclude(result, Arrays.asList(excluded));
+		return new ObjectOpenHashSet<>(result);
+	}
+
+	private static Set<RawEntry> entries(RawEntry... entries) {
+		return new ObjectLinkedOpenHashSet<>(Arrays.asList(entries));
+	}
+}
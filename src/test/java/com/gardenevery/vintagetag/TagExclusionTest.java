@@ -0,0 +1,82 @@
+package com.gardenevery.vintagetag;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.gardenevery.vintagetag.TagEntry.ItemEntry;
+import com.gardenevery.vintagetag.TagEntry.ItemEntry.ItemKey;
+import com.gardenevery.vintagetag.TagEntry.ItemEntry.ItemRange;
+
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+
+import net.minecraft.item.Item;
+import net.minecraftforge.oredict.OreDictionary;
+
+class TagExclusionTest {
+	private final Item item = new Item().setHasSubtypes(true);
+	private final Item other = new Item().setHasSubtypes(true);
+
+	@Test
+	void excludingKeySplitsRange() {
+		var result = exclude(entries(TagEntry.itemRange(item, 0, 10)), TagEntry.item(item, 5));
+		assertEquals(entries(TagEntry.itemRange(item, 0, 4), TagEntry.itemRange(item, 6, 10)), result);
+	}
+
+	@Test
+	void adjacentExclusionsLeaveNoGap() {
+		var result = exclude(entries(TagEntry.itemRange(item, 0, 10)), TagEntry.item(item, 4), TagEntry.item(item, 5));
+		assertEquals(entries(TagEntry.itemRange(item, 0, 3), TagEntry.itemRange(item, 6, 10)), result);
+
+		result = exclude(entries(TagEntry.itemRange(item, 0, 10)), TagEntry.itemRange(item, 2, 4),
+				TagEntry.itemRange(item, 5, 9));
+		assertEquals(entries(TagEntry.itemRange(item, 0, 1), TagEntry.item(item, 10)), result);
+	}
+
+	@Test
+	void oneWidePieceBecomesKey() {
+		var result = exclude(entries(TagEntry.itemRange(item, 0, 10)), TagEntry.itemRange(item, 1, 10));
+		assertEquals(entries(new ItemKey(item, 0)), result);
+	}
+
+	@Test
+	void excludingFromWildcardKeepsItOpenEnded() {
+		var wildcard = (ItemRange) TagEntry.itemRange(item, 0, OreDictionary.WILDCARD_VALUE);
+		assertTrue(wildcard.isWildcard());
+
+		var result = exclude(entries(wildcard), TagEntry.item(item, 6));
+		assertEquals(entries(TagEntry.itemRange(item, 0, 5), TagEntry.itemRange(item, 7, OreDictionary.WILDCARD_VALUE)),
+				result);
+		for (var piece : result) {
+			assertFalse(((ItemRange) piece).isWildcard());
+		}
+	}
+
+	@Test
+	void excludedRangeRemovesCoveredKeys() {
+		var result = exclude(entries(TagEntry.item(item, 3), TagEntry.item(item, 20)), TagEntry.itemRange(item, 0, 10));
+		assertEquals(entries(TagEntry.item(item, 20)), result);
+	}
+
+	@Test
+	void exclusionsOnlyTouchTheirOwnItem() {
+		var result = exclude(entries(TagEntry.itemRange(item, 0, 3), TagEntry.itemRange(other, 0, 3)),
+				TagEntry.item(item, 1));
+		assertEquals(entries(TagEntry.item(item, 0), TagEntry.itemRange(item, 2, 3), TagEntry.itemRange(other, 0, 3)),
+				result);
+	}
+
+	private static Set<ItemEntry> exclude(Set<ItemEntry> result, ItemEntry... excluded) {
+		Tag.MutableTagContainer.exclude(result, Arrays.asList(excluded));
+		return result;
+	}
+
+	private static Set<ItemEntry> entries(ItemEntry... entries) {
+		return new ObjectOpenHashSet<>(Arrays.asList(entries));
+	}
+}
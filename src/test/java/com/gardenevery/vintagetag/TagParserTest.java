@@ -0,0 +1,168 @@
+package com.gardenevery.vintagetag;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.gardenevery.vintagetag.TagParser.RawEntry;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+class TagParserTest {
+	private static final int MAX = TagParser.MAX_METADATA;
+
+	@Test
+	void metadataWildcardCoversEverything() {
+		assertMetadata(0, MAX, "*");
+	}
+
+	@Test
+	void metadataSingleValue() {
+		assertMetadata(3, 3, "3");
+		assertMetadata(3, 3, "3.0");
+		assertMetadata(MAX, MAX, String.valueOf(MAX));
+	}
+
+	@Test
+	void metadataRange() {
+		assertMetadata(2, 7, "2-7");
+		assertMetadata(2, 7, "2 - 7");
+		assertMetadata(4, 4, "4-4");
+		assertMetadata(0, MAX, "0-" + MAX);
+	}
+
+	@Test
+	void metadataReversedRangeIsInvalid() {
+		assertNull(TagParser.parseMetadata("7-2"));
+	}
+
+	@Test
+	void metadataOutOfRangeIsInvalid() {
+		assertNull(TagParser.parseMetadata("0-" + (MAX + 1)));
+		assertNull(TagParser.parseMetadata("0-99999999999"));
+	}
+
+	@Test
+	void metadataNegativeInput() {
+		assertNull(TagParser.parseMetadata("-1-5"));
+		assertNull(TagParser.parseMetadata("3--1"));
+		assertNull(TagParser.parseMetadata("-"));
+		// A single value is passed through as before ranges existed
+		assertMetadata(-1, -1, "-1");
+	}
+
+	@Test
+	void metadataGarbageIsInvalid() {
+		assertNull(TagParser.parseMetadata("a-b"));
+		assertNull(TagParser.parseMetadata("abc"));
+		assertNull(TagParser.parseMetadata("1-"));
+		assertNull(TagParser.parseMetadata("**"));
+	}
+
+	@Test
+	void bulkParsesWildcardsAndRanges() {
+		var problems = new ObjectArrayList<String>();
+		var definition = parseBulk(TagType.ITEM, problems,
+				"@replace",
+				"// comment",
+				"minecraft:wool *",
+				"minecraft:dye 2-7",
+				"minecraft:stone 3",
+				"",
+				"minecraft:sand");
+
+		assertTrue(definition.replace());
+		assertEquals(Arrays.asList(new RawEntry("minecraft:wool", 0, MAX), new RawEntry("minecraft:dye", 2, 7),
+				new RawEntry("minecraft:stone", 3), new RawEntry("minecraft:sand", 0)), definition.values());
+		assertTrue(problems.isEmpty());
+	}
+
+	@Test
+	void bulkReportsAndSkipsInvalidMetadata() {
+		var problems = new ObjectArrayList<String>();
+		var definition = parseBulk(TagType.ITEM, problems,
+				"minecraft:log 7-2",
+				"minecraft:planks 0-" + (MAX + 1),
+				"minecraft:glass -1-5",
+				"minecraft:wool a-b",
+				"minecraft:dye 3--1",
+				"minecraft:stone 1");
+
+		assertFalse(definition.replace());
+		assertEquals(Collections.singletonList(new RawEntry("minecraft:stone", 1)), definition.values());
+		assertEquals(5, problems.size());
+	}
+
+	@Test
+	void bulkNegativeSingleMetadataIsKept() {
+		var problems = new ObjectArrayList<String>();
+		var definition = parseBulk(TagType.ITEM, problems, "minecraft:stone -1");
+
+		assertEquals(Collections.singletonList(new RawEntry("minecraft:stone", -1)), definition.values());
+		assertTrue(problems.isEmpty());
+	}
+
+	@Test
+	void bulkIgnoresMetadataOutsideItemTags() {
+		var problems = new ObjectArrayList<String>();
+		var definition = parseBulk(TagType.BLOCK, problems, "minecraft:stone 7-2");
+
+		assertEquals(Collections.singletonList(new RawEntry("minecraft:stone", 0)), definition.values());
+		assertTrue(problems.isEmpty());
+	}
+
+	@Test
+	void bulkIdsAreInternedFromBytes() {
+		var problems = new ObjectArrayList<String>();
+		var first = parseBulk(TagType.ITEM, problems, "minecraft:cobblestone 1", "minecraft:cobblestone 2");
+		var second = parseBulk(TagType.BLOCK, problems, "minecraft:cobblestone");
+
+		var id = first.values().get(0).id();
+		assertEquals("minecraft:cobblestone", id);
+		assertSame(id, first.values().get(1).id());
+		assertSame(id, second.values().get(0).id());
+		assertSame(id, TagParser.intern(new String("minecraft:cobblestone")));
+	}
+
+	@Test
+	void smallBulkFileIsParsed() throws IOException {
+		var file = Files.createTempFile("small", TagParser.BULK_EXTENSION);
+		try {
+			Files.write(file, Arrays.asList("@replace", "minecraft:glass 2-3"), StandardCharsets.UTF_8);
+			var definition = TagParser.parseFile(file, "test:small", TagType.ITEM, (message, subject, exception) -> {
+			});
+
+			assertNotNull(definition);
+			assertTrue(definition.replace());
+			assertEquals(Collections.singletonList(new RawEntry("minecraft:glass", 2, 3)), definition.values());
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+
+	private static void assertMetadata(int min, int max, String raw) {
+		var packed = TagParser.parseMetadata(raw);
+		assertNotNull(packed);
+		assertEquals(min, (int) (packed >> 32));
+		assertEquals(max, (int) packed.longValue());
+	}
+
+	private static TagParser.TagDefinition parseBulk(TagType type, List<String> problems, String... lines) {
+		var bytes = String.join("\n", lines).getBytes(StandardCharsets.UTF_8);
+		return TagParser.parseBulk(ByteBuffer.wrap(bytes), "test:tag", type,
+				(message, subject, exception) -> problems.add(String.valueOf(subject)));
+	}
+}
@@ -0,0 +1,140 @@
+package com.gardenevery.vintagetag;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import com.gardenevery.vintagetag.TagParser.RawEntry;
+import com.gardenevery.vintagetag.TagSources.Contribution;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+/**
+ * A prebaked snapshot must load to the same tags as scanning the files it
+ * was compiled from, including next to ore dictionary tags the compiler
+ * never sees.
+ */
+class TagPrebakeTest {
+	// What ore sync contributes ahead of every tag file
+	private static final List<Contribution> ORE = Arrays.asList(
+			new Contribution(TagType.ITEM, "ingotIron", false,
+					Collections.singletonList(new RawEntry("minecraft:iron_ingot", 0))),
+			new Contribution(TagType.ITEM, "gemAny", false,
+					Collections.singletonList(new RawEntry("minecraft:wool", 3))));
+
+	@Test
+	void compiledAndScannedTagsAreEqual() throws IOException {
+		var root = Files.createTempDirectory("prebake");
+		try {
+			write(root.resolve("registry.txt"), "item minecraft:stone 1", "item minecraft:dirt 0",
+					"item minecraft:iron_ingot 0", "item minecraft:wool 1", "block minecraft:stone");
+			var config = root.resolve("tags");
+			write(config.resolve("item/ingotIron.json"), "{\"replace\": true, \"values\": [\"minecraft:stone\"]}");
+			write(config.resolve("item/gemAny.json"), "{\"values\": [\"minecraft:dirt\"]}");
+			write(config.resolve("item/test/mixed.json"), "{\"values\": [\"#ingotIron\", \"#gemAny\","
+					+ " {\"id\": \"minecraft:wool\", \"metadata\": \"0-15\"}, \"minecraft:dirt\", \"!minecraft:dirt\"]}");
+			write(config.resolve("item/test/cleared.json"), "{\"replace\": true, \"values\": []}");
+			write(config.resolve("block/test/rocks.tagbin"), "minecraft:stone", "#test:missing");
+
+			var compiled = new TagCompiler().compile(root.resolve("registry.txt"), null, config);
+			var file = root.resolve("prebaked.bin");
+			compiled.write(file);
+
+			var prebaked = new ObjectArrayList<>(ORE);
+			prebaked.addAll(TagLoader.contributions(SnapshotFile.read(file)));
+			var scanned = new ObjectArrayList<>(ORE);
+			scanned.addAll(scan(config));
+
+			for (var type : TagType.values()) {
+				assertEquals(TagSources.fold(type, scanned), TagSources.fold(type, prebaked));
+			}
+			var items = TagSources.fold(TagType.ITEM, prebaked);
+			assertEquals(Collections.singleton(new RawEntry("minecraft:stone", 0)), items.get("ingotIron"));
+			assertTrue(items.get("test:mixed").contains(new RawEntry("#gemAny", 0)));
+			assertTrue(TagSources.fold(TagType.BLOCK, prebaked).get("test:rocks")
+					.contains(new RawEntry("#test:missing", 0)));
+		} finally {
+			delete(root);
+		}
+	}
+
+	@Test
+	void inputFingerprintFollowsContentOnly() throws IOException {
+		var root = Files.createTempDirectory("prebake");
+		try {
+			write(root.resolve("registry.txt"), "item minecraft:stone 1");
+			var config = root.resolve("tags");
+			var file = config.resolve("item/test/rocks.json");
+			write(file, "{\"values\": [\"minecraft:stone\"]}");
+
+			var compiled = new TagCompiler().compile(root.resolve("registry.txt"), null, config);
+			var inputs = TagCompiler.inputFingerprint(Collections.emptyMap(), config);
+			assertTrue(compiled.matchesInputs(inputs));
+
+			Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+			assertTrue(compiled.matchesInputs(TagCompiler.inputFingerprint(Collections.emptyMap(), config)));
+
+			write(file, "{\"values\": [\"minecraft:dirt\"]}");
+			assertFalse(compiled.matchesInputs(TagCompiler.inputFingerprint(Collections.emptyMap(), config)));
+
+			write(file, "{\"values\": [\"minecraft:stone\"]}");
+			write(config.resolve("item/extra.json"), "{\"values\": []}");
+			assertFalse(compiled.matchesInputs(TagCompiler.inputFingerprint(Collections.emptyMap(), config)));
+		} finally {
+			delete(root);
+		}
+	}
+
+	private static List<Contribution> scan(Path config) throws IOException {
+		var contributions = new ObjectArrayList<Contribution>();
+		for (var type : TagType.values()) {
+			var typeDir = config.resolve(type.getName());
+			if (!Files.isDirectory(typeDir)) {
+				continue;
+			}
+
+			List<Path> files;
+			try (var paths = Files.walk(typeDir, 3)) {
+				files = paths.filter(path -> TagParser.isConfigTagFile(path.getFileName().toString()))
+						.collect(Collectors.toList());
+			}
+			for (var path : files) {
+				var relativePath = typeDir.relativize(path).toString().replace(File.separatorChar, '/');
+				var definition = TagParser.parseFile(path, TagParser.convertPathToTagName(relativePath), type,
+						(message, subject, exception) -> {
+						});
+				if (definition != null) {
+					contributions.add(TagLoader.contribution(definition));
+				}
+			}
+		}
+		return contributions;
+	}
+
+	private static void write(Path file, String... lines) throws IOException {
+		Files.createDirectories(file.getParent());
+		Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+	}
+
+	private static void delete(Path root) throws IOException {
+		try (var paths = Files.walk(root)) {
+			for (var path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+				Files.delete(path);
+			}
+		}
+	}
+}
@@ -0,0 +1,66 @@
+package com.gardenevery.vintagetag;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+import com.gardenevery.vintagetag.Tag.MutableTagContainer;
+import com.gardenevery.vintagetag.TagEntry.ItemEntry;
+import com.google.common.collect.ImmutableSet;
+
+import net.minecraft.item.Item;
+import net.minecraftforge.oredict.OreDictionary;
+
+class TagRangeTest {
+	private final Item item = new Item().setHasSubtypes(true);
+	private final Item other = new Item().setHasSubtypes(true);
+
+	@Test
+	void keysGetTheTagsOfCoveringRanges() {
+		for (var lazy : new boolean[] { false, true }) {
+			var tag = build(lazy);
+
+			assertEquals(ImmutableSet.of("any"), tag.getTags(TagEntry.item(item, 0)));
+			assertEquals(ImmutableSet.of("any", "low"), tag.getTags(TagEntry.item(item, 2)));
+			assertEquals(ImmutableSet.of("any", "low", "three"), tag.getTags(TagEntry.item(item, 3)));
+			assertEquals(ImmutableSet.of("any", "low"), tag.getTags(TagEntry.item(item, 5)));
+			assertEquals(ImmutableSet.of("any"), tag.getTags(TagEntry.item(item, 6)));
+			assertEquals(ImmutableSet.of("any"), tag.getTags(TagEntry.item(item, OreDictionary.WILDCARD_VALUE)));
+			assertTrue(tag.getTags(TagEntry.item(other, 3)).isEmpty());
+
+			assertTrue(tag.hasTag(TagEntry.item(item, 3), "three"));
+			assertTrue(tag.hasTag(TagEntry.item(item, 4), "low"));
+			assertFalse(tag.hasTag(TagEntry.item(item, 6), "low"));
+			assertFalse(tag.hasTag(TagEntry.item(other, 4), "any"));
+		}
+	}
+
+	@Test
+	void keysWithoutOwnTagsShareTheSegmentSet() {
+		var tag = build(false);
+		var first = tag.getTags(TagEntry.item(item, 1000));
+		for (int metadata = 6; metadata < 10_000; metadata++) {
+			assertSame(first, tag.getTags(TagEntry.item(item, metadata)));
+		}
+	}
+
+	private Tag<ItemEntry> build(boolean lazy) {
+		var previous = TagConfig.lazyExpansion;
+		TagConfig.lazyExpansion = lazy;
+		try {
+			var container = new MutableTagContainer<ItemEntry>();
+			container.register(Collections.singleton(TagEntry.itemRange(item, 0, OreDictionary.WILDCARD_VALUE)),
+					"any");
+			container.register(Collections.singleton(TagEntry.itemRange(item, 2, 5)), "low");
+			container.register(Collections.singleton(TagEntry.item(item, 3)), "three");
+			return container.build();
+		} finally {
+			TagConfig.lazyExpansion = previous;
+		}
+	}
+}